@@ -0,0 +1,154 @@
+package pl.prokodzik.altmetrik.payments.loadtest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load: requests are sent on a fixed schedule regardless of how fast the server answers,
+ * and latency is measured from the moment a request was supposed to be sent. A server stall therefore
+ * shows up in the latency of every request scheduled during the stall, not only the one that was stuck
+ * (no coordinated omission).
+ */
+class LoadGenerator {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final String[] CURRENCIES = {"PLN", "USD", "EUR", "GBP"};
+
+    private final LoadTestConfig config;
+    private final String baseUrl;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final Gson gson = new Gson();
+    private final Random random = new Random();
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final ConcurrentLinkedQueue<CompletableFuture<?>> inFlight = new ConcurrentLinkedQueue<>();
+    private PaymentIds ids;
+    private volatile long measuredStart;
+
+    LoadGenerator(final LoadTestConfig loadTestConfig) {
+        config = loadTestConfig;
+        baseUrl = "http://localhost:" + config.getPort() + "/payments";
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    void preload() throws Exception {
+        String[] preloaded = new String[config.getPreloadPayments()];
+        for (int i = 0; i < preloaded.length; i++) {
+            HttpResponse<String> response = client.send(request(Operation.CREATE, null), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Preloading payments failed with status " + response.statusCode() + ": " + response.body());
+            }
+            preloaded[i] = idOf(response.body());
+        }
+        ids = new PaymentIds(preloaded, Math.max(1024, config.getRequestsPerSecond() * 10));
+    }
+
+    /**
+     * Runs warmup and measured phase, only requests scheduled after warmup are recorded.
+     */
+    LoadResult run() throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.getRequestsPerSecond();
+        long warmupRequests = (long) config.getWarmupSeconds() * config.getRequestsPerSecond();
+        long totalRequests = warmupRequests + (long) config.getDurationSeconds() * config.getRequestsPerSecond();
+        long start = System.nanoTime();
+        measuredStart = start + warmupRequests * intervalNanos;
+        for (long i = 0; i < totalRequests; i++) {
+            long intendedStart = start + i * intervalNanos;
+            long delay;
+            while ((delay = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            send(config.getMix().next(random), intendedStart);
+        }
+        CompletableFuture<?> pending;
+        while ((pending = inFlight.poll()) != null) {
+            pending.handle((response, error) -> null).join();
+        }
+        long measuredNanos = System.nanoTime() - measuredStart;
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        Map<Operation, Long> errorCounts = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, recorders.get(operation).getIntervalHistogram());
+            errorCounts.put(operation, errors.get(operation).sum());
+        }
+        return new LoadResult(config, histograms, errorCounts, measuredNanos);
+    }
+
+    private void send(final Operation operation, final long intendedStart) {
+        String id = null;
+        if (operation == Operation.READ || operation == Operation.UPDATE) {
+            id = ids.any(random);
+        } else if (operation == Operation.DELETE) {
+            id = ids.takeCreated(random);
+            if (id == null) {
+                id = "missing";
+            }
+        }
+        CompletableFuture<HttpResponse<String>> response = client.sendAsync(request(operation, id), HttpResponse.BodyHandlers.ofString());
+        inFlight.add(response.whenComplete((result, error) -> {
+            boolean failed = error != null || result.statusCode() >= 300;
+            if (!failed && operation == Operation.CREATE) {
+                ids.add(idOf(result.body()));
+            }
+            if (intendedStart < measuredStart) {
+                return;
+            }
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+            recorders.get(operation).recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+            if (failed) {
+                errors.get(operation).increment();
+            }
+        }));
+        while (inFlight.peek() != null && inFlight.peek().isDone()) {
+            inFlight.poll();
+        }
+    }
+
+    private HttpRequest request(final Operation operation, final String id) {
+        switch (operation) {
+            case CREATE:
+                return HttpRequest.newBuilder(URI.create(baseUrl)).POST(HttpRequest.BodyPublishers.ofString(paymentJson())).build();
+            case READ:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/" + id)).GET().build();
+            case UPDATE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/" + id)).method("PATCH", HttpRequest.BodyPublishers.ofString(paymentJson())).build();
+            case DELETE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/" + id)).DELETE().build();
+            case LIST:
+            default:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "?limit=50&after=" + ids.any(random))).GET().build();
+        }
+    }
+
+    private String paymentJson() {
+        JsonObject payment = new JsonObject();
+        payment.addProperty("amount", random.nextInt(1_000_000));
+        payment.addProperty("currency", CURRENCIES[random.nextInt(CURRENCIES.length)]);
+        payment.addProperty("userId", "user" + random.nextInt(1000));
+        payment.addProperty("accountNumber", "account" + random.nextInt(10_000));
+        return gson.toJson(payment);
+    }
+
+    private String idOf(final String paymentJson) {
+        return gson.fromJson(paymentJson, JsonObject.class).get("id").getAsString();
+    }
+}
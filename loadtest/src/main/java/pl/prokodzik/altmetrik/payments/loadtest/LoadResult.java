@@ -0,0 +1,97 @@
+package pl.prokodzik.altmetrik.payments.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measured latencies (microseconds) and errors of one run. Reports are written per run and appended to
+ * {@code summary.csv}, so runs of different commits can be compared side by side.
+ */
+@Getter
+@AllArgsConstructor
+class LoadResult {
+
+    private static final String SUMMARY_HEADER = "label,timestamp,storage,targetRate,mix,operation,requests,errors,throughput,p50Ms,p99Ms,p999Ms,maxMs";
+
+    private final LoadTestConfig config;
+    private final Map<Operation, Histogram> histograms;
+    private final Map<Operation, Long> errors;
+    private final long measuredNanos;
+
+    Histogram total() {
+        Histogram total = new Histogram(3);
+        histograms.values().forEach(total::add);
+        return total;
+    }
+
+    double throughput(final Histogram histogram) {
+        return histogram.getTotalCount() / (measuredNanos / 1e9);
+    }
+
+    void print(final PrintStream out) {
+        out.printf(Locale.ROOT, "label=%s storage=%s targetRate=%d/s duration=%ds mix=%s%n", config.getLabel(), config.getStorage(),
+                config.getRequestsPerSecond(), config.getDurationSeconds(), config.getMix());
+        out.printf(Locale.ROOT, "%-10s %10s %8s %12s %10s %10s %10s %10s%n", "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+            if (entry.getValue().getTotalCount() > 0) {
+                printRow(out, entry.getKey().name(), entry.getValue(), errors.get(entry.getKey()));
+            }
+        }
+        printRow(out, "TOTAL", total(), errors.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    File write() throws IOException {
+        File directory = config.getReportDirectory();
+        Files.createDirectories(directory.toPath());
+        String name = String.format(Locale.ROOT, "%s-%s-%drps", config.getLabel(), config.getStorage(), config.getRequestsPerSecond());
+        File report = new File(directory, name + ".txt");
+        try (PrintStream out = new PrintStream(new FileOutputStream(report))) {
+            print(out);
+        }
+        for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+            if (entry.getValue().getTotalCount() > 0) {
+                try (PrintStream out = new PrintStream(new FileOutputStream(new File(directory, name + "-" + entry.getKey() + ".hgrm")))) {
+                    entry.getValue().outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        }
+        File summary = new File(directory, "summary.csv");
+        boolean newSummary = !summary.exists();
+        try (PrintStream out = new PrintStream(new FileOutputStream(summary, true))) {
+            if (newSummary) {
+                out.println(SUMMARY_HEADER);
+            }
+            String timestamp = Instant.now().toString();
+            for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+                summaryRow(out, timestamp, entry.getKey().name(), entry.getValue(), errors.get(entry.getKey()));
+            }
+            summaryRow(out, timestamp, "TOTAL", total(), errors.values().stream().mapToLong(Long::longValue).sum());
+        }
+        return report;
+    }
+
+    private void printRow(final PrintStream out, final String operation, final Histogram histogram, final long errorCount) {
+        out.printf(Locale.ROOT, "%-10s %10d %8d %12.1f %10.3f %10.3f %10.3f %10.3f%n", operation, histogram.getTotalCount(), errorCount,
+                throughput(histogram), millis(histogram, 50), millis(histogram, 99), millis(histogram, 99.9), histogram.getMaxValue() / 1000.0);
+    }
+
+    private void summaryRow(final PrintStream out, final String timestamp, final String operation, final Histogram histogram, final long errorCount) {
+        out.printf(Locale.ROOT, "%s,%s,%s,%d,\"%s\",%s,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f%n", config.getLabel(), timestamp, config.getStorage(),
+                config.getRequestsPerSecond(), config.getMix(), operation, histogram.getTotalCount(), errorCount, throughput(histogram),
+                millis(histogram, 50), millis(histogram, 99), millis(histogram, 99.9), histogram.getMaxValue() / 1000.0);
+    }
+
+    private static double millis(final Histogram histogram, final double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
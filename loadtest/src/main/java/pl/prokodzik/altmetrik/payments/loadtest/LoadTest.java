@@ -0,0 +1,45 @@
+package pl.prokodzik.altmetrik.payments.loadtest;
+
+import pl.prokodzik.altmetrik.payments.PaymentsRoutes;
+import spark.Spark;
+
+import java.io.File;
+
+/**
+ * Starts the payments server in this JVM and drives open-loop load against it. Configured with
+ * {@code loadtest.*} system properties, {@code payments.*} properties are passed to the server.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        if (config.getPreloadPayments() < 1 || config.getRequestsPerSecond() < 1) {
+            throw new IllegalArgumentException("loadtest.preload and loadtest.rate have to be positive");
+        }
+        File csvFile = null;
+        System.setProperty("payments.http.port", String.valueOf(config.getPort()));
+        // every request comes from this client, per client rate limit would cap the offered load
+        System.setProperty("payments.admission.clientRate", System.getProperty("payments.admission.clientRate", "1000000000"));
+        System.setProperty("payments.admission.clientBurst", System.getProperty("payments.admission.clientBurst", "1000000000"));
+        if ("CSV".equals(config.getStorage()) && System.getProperty("payments.csv.file") == null) {
+            csvFile = File.createTempFile("loadtest", ".csv");
+            System.setProperty("payments.csv.file", csvFile.getPath());
+        }
+        PaymentsRoutes.main(new String[]{config.getStorage()});
+        Spark.awaitInitialization();
+        try {
+            LoadGenerator generator = new LoadGenerator(config);
+            generator.preload();
+            LoadResult result = generator.run();
+            result.print(System.out);
+            System.out.println("Report written to " + result.write());
+        } finally {
+            Spark.stop();
+            Spark.awaitStop();
+            if (csvFile != null) {
+                csvFile.delete();
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,51 @@
+package pl.prokodzik.altmetrik.payments.loadtest;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+@Getter
+@Builder
+public class LoadTestConfig {
+    private final String storage;
+    private final int port;
+    private final int requestsPerSecond;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int preloadPayments;
+    private final TrafficMix mix;
+    private final String label;
+    private final File reportDirectory;
+
+    public static LoadTestConfig fromSystemProperties() {
+        return LoadTestConfig.builder()
+                .storage(System.getProperty("loadtest.storage", "MEM"))
+                .port(Integer.getInteger("loadtest.port", 18080))
+                .requestsPerSecond(Integer.getInteger("loadtest.rate", 1000))
+                .durationSeconds(Integer.getInteger("loadtest.duration", 30))
+                .warmupSeconds(Integer.getInteger("loadtest.warmup", 5))
+                .preloadPayments(Integer.getInteger("loadtest.preload", 1000))
+                .mix(TrafficMix.parse(System.getProperty("loadtest.mix", "create=20,read=50,update=10,delete=5,list=15")))
+                .label(System.getProperty("loadtest.label", currentCommit()))
+                .reportDirectory(new File(System.getProperty("loadtest.reportDir", "build/reports/loadtest")))
+                .build();
+    }
+
+    private static String currentCommit() {
+        try {
+            Process git = new ProcessBuilder("git", "describe", "--always", "--dirty").redirectErrorStream(true).start();
+            try (InputStream output = git.getInputStream()) {
+                String commit = new String(output.readAllBytes()).trim();
+                return git.waitFor() == 0 && !commit.isEmpty() ? commit : "unknown";
+            }
+        } catch (IOException e) {
+            return "unknown";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "unknown";
+        }
+    }
+}
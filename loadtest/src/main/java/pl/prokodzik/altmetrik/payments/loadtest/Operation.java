@@ -0,0 +1,5 @@
+package pl.prokodzik.altmetrik.payments.loadtest;
+
+public enum Operation {
+    CREATE, READ, UPDATE, DELETE, LIST
+}
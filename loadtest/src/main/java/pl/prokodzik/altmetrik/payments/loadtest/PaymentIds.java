@@ -0,0 +1,51 @@
+package pl.prokodzik.altmetrik.payments.loadtest;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ids of payments known to exist. Preloaded payments are never deleted so reads and updates always
+ * have a target, deletes only take payments created during the run.
+ */
+class PaymentIds {
+
+    private static final int MAX_ATTEMPTS = 16;
+
+    private final String[] preloaded;
+    private final AtomicReferenceArray<String> created;
+    private final AtomicLong createdCount = new AtomicLong();
+
+    PaymentIds(final String[] preloadedIds, final int capacity) {
+        preloaded = preloadedIds;
+        created = new AtomicReferenceArray<>(capacity);
+    }
+
+    void add(final String id) {
+        created.set((int) (createdCount.getAndIncrement() % created.length()), id);
+    }
+
+    String any(final Random random) {
+        long filled = Math.min(createdCount.get(), created.length());
+        int pick = random.nextInt((int) Math.min(Integer.MAX_VALUE, preloaded.length + filled));
+        if (pick < preloaded.length) {
+            return preloaded[pick];
+        }
+        String id = created.get(pick - preloaded.length);
+        return id != null ? id : preloaded[random.nextInt(preloaded.length)];
+    }
+
+    String takeCreated(final Random random) {
+        long filled = Math.min(createdCount.get(), created.length());
+        if (filled == 0) {
+            return null;
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            String id = created.getAndSet(random.nextInt((int) filled), null);
+            if (id != null) {
+                return id;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,61 @@
+package pl.prokodzik.altmetrik.payments.loadtest;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Weighted mix of operations, parsed from e.g. {@code create=20,read=50,update=10,delete=5,list=15}.
+ */
+public class TrafficMix {
+
+    private final Map<Operation, Integer> weights;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    public TrafficMix(final Map<Operation, Integer> operationWeights) {
+        weights = new EnumMap<>(operationWeights);
+        weights.values().removeIf(weight -> weight <= 0);
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Traffic mix needs at least one operation with positive weight");
+        }
+        operations = weights.keySet().toArray(new Operation[0]);
+        cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += weights.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public static TrafficMix parse(final String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.trim().split("=");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Invalid traffic mix entry: " + entry);
+            }
+            weights.put(Operation.valueOf(weight[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(weight[1].trim()));
+        }
+        return new TrafficMix(weights);
+    }
+
+    public Operation next(final Random random) {
+        int ticket = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (ticket < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder mix = new StringBuilder();
+        weights.forEach((operation, weight) -> mix.append(mix.length() == 0 ? "" : ",")
+                .append(operation.name().toLowerCase(Locale.ROOT)).append('=').append(weight));
+        return mix.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package pl.prokodzik.altmetrik.payments.loadtest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+class TrafficMixTest {
+
+    @Test
+    void should_pick_operations_according_to_weights() {
+        //given:
+        TrafficMix mix = TrafficMix.parse("create=10, read=30,update=0,list=60");
+        Random random = new Random(7);
+        Map<Operation, Integer> picked = new EnumMap<>(Operation.class);
+
+        //when:
+        for (int i = 0; i < 100_000; i++) {
+            picked.merge(mix.next(random), 1, Integer::sum);
+        }
+
+        //then:
+        Assertions.assertEquals("create=10,read=30,list=60", mix.toString());
+        Assertions.assertFalse(picked.containsKey(Operation.UPDATE));
+        Assertions.assertFalse(picked.containsKey(Operation.DELETE));
+        Assertions.assertEquals(10_000, picked.get(Operation.CREATE), 1000);
+        Assertions.assertEquals(60_000, picked.get(Operation.LIST), 1000);
+    }
+
+    @Test
+    void should_reject_invalid_mix() {
+        //when:
+        //then:
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TrafficMix.parse("create"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TrafficMix.parse("create=0"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TrafficMix.parse("unknown=1"));
+    }
+}
@@ -0,0 +1,71 @@
+package pl.prokodzik.altmetrik.payments.bench;
+
+import pl.prokodzik.altmetrik.payments.archive.ArchiveWriter;
+import pl.prokodzik.altmetrik.payments.archive.ColumnarArchive;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.SnapshotRepository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.File;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+public class ArchiveBenchmark {
+
+    private static final List<Currency> CURRENCIES = List.of(Currency.getInstance("PLN"), Currency.getInstance("USD"),
+            Currency.getInstance("EUR"), Currency.getInstance("GBP"));
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int payments = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        Repository<StorablePayment, String> repository = new SnapshotRepository(() -> UUID.randomUUID().toString());
+        Random random = new Random(1);
+        for (int i = 0; i < payments; i++) {
+            repository.save(StorablePayment.builder().amount((long) random.nextInt(1_000_000))
+                    .currency(CURRENCIES.get(random.nextInt(CURRENCIES.size())))
+                    .userId("user" + random.nextInt(1000)).accountNumber("account" + random.nextInt(10_000)).build());
+        }
+        File file = File.createTempFile("archiveBenchmark", ".archive");
+        long start = System.nanoTime();
+        long archiveBytes = new ArchiveWriter().write(repository.getAll(), file);
+        System.out.printf("Archived %d payments into %d bytes (%.1f bytes per payment) in %.0f ms%n",
+                payments, archiveBytes, (double) archiveBytes / payments, (System.nanoTime() - start) / 1e6);
+
+        System.out.println(BenchmarkResult.header());
+        System.out.println(measure("getAll() sum by currency", () -> repository.getAll().stream()
+                .collect(Collectors.groupingBy(StorablePayment::getCurrency, Collectors.summingLong(StorablePayment::getAmount)))));
+        System.out.println(measure("getAll() histogram for one user", () -> repository.getAll().stream()
+                .filter(p -> "user1".equals(p.getUserId()))
+                .collect(Collectors.groupingBy(p -> p.getAmount() / 10_000, Collectors.counting()))));
+        try (ColumnarArchive archive = new ColumnarArchive(file)) {
+            System.out.println(measure("archive sum by currency", () -> archive.scan().sumByCurrency()));
+            System.out.println(measure("archive histogram for one user", () -> archive.scan().userId("user1").amountHistogram(10_000)));
+            System.out.printf("Archive bytes read by all scans: %d%n", archive.getBytesRead());
+        }
+        file.delete();
+    }
+
+    private static BenchmarkResult measure(String name, Query query) throws Exception {
+        Object result = query.run();
+        long[] latencies = new long[RUNS];
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            long runStart = System.nanoTime();
+            result = query.run();
+            latencies[i] = System.nanoTime() - runStart;
+        }
+        long total = System.nanoTime() - start;
+        if (result instanceof Map && ((Map<?, ?>) result).isEmpty()) {
+            throw new IllegalStateException(name + " returned nothing");
+        }
+        return new BenchmarkResult(name, latencies, total);
+    }
+
+    private interface Query {
+        Object run() throws Exception;
+    }
+}
@@ -0,0 +1,36 @@
+package pl.prokodzik.altmetrik.payments.bench;
+
+import java.util.Arrays;
+
+class BenchmarkResult {
+
+    private final String name;
+    private final long[] latenciesNanos;
+    private final long totalNanos;
+
+    BenchmarkResult(final String name, final long[] latenciesNanos, final long totalNanos) {
+        this.name = name;
+        this.latenciesNanos = latenciesNanos.clone();
+        this.totalNanos = totalNanos;
+        Arrays.sort(this.latenciesNanos);
+    }
+
+    static String header() {
+        return String.format("%-40s %12s %12s %12s %12s", "benchmark", "ops/s", "p50 us", "p99 us", "max us");
+    }
+
+    double throughput() {
+        return latenciesNanos.length / (totalNanos / 1e9);
+    }
+
+    double percentileMicros(final double percentile) {
+        int idx = (int) Math.ceil(percentile / 100 * latenciesNanos.length) - 1;
+        return latenciesNanos[Math.max(0, Math.min(latenciesNanos.length - 1, idx))] / 1e3;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-40s %12.0f %12.1f %12.1f %12.1f", name, throughput(),
+                percentileMicros(50), percentileMicros(99), percentileMicros(100));
+    }
+}
@@ -0,0 +1,66 @@
+package pl.prokodzik.altmetrik.payments.bench;
+
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
+import pl.prokodzik.altmetrik.payments.storage.CsvMapper;
+import pl.prokodzik.altmetrik.payments.storage.CsvRepository;
+import pl.prokodzik.altmetrik.payments.storage.Durability;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+import pl.prokodzik.altmetrik.payments.storage.btree.BTreeRepository;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+public class DurabilityBenchmark {
+
+    private static final List<String> MODES = List.of("none", "os-buffered", "fsync-per-write", "fsync-batched-every-10-ms");
+    private static final Supplier<String> idSupplier = () -> UUID.randomUUID().toString();
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        RepositoryFactory csv = (file, durability) -> new CsvRepository(idSupplier, new CsvMapper(), file, durability);
+        RepositoryFactory bTree = (file, durability) -> new BTreeRepository(idSupplier, new BinaryMapper(), file, 1024, durability);
+        run("warmup", "os-buffered", operations, csv);
+        run("warmup", "os-buffered", operations, bTree);
+
+        System.out.println("Saving " + operations + " payments per run");
+        System.out.println(BenchmarkResult.header());
+        for (String mode : MODES) {
+            System.out.println(run("CSV " + mode, mode, operations, csv));
+        }
+        for (String mode : MODES) {
+            System.out.println(run("BTREE " + mode, mode, operations, bTree));
+        }
+    }
+
+    private static BenchmarkResult run(String name, String mode, int operations, RepositoryFactory factory) throws Exception {
+        File file = File.createTempFile("durabilityBenchmark", ".data");
+        file.delete();
+        file.createNewFile();
+        Durability durability = Durability.parse(mode);
+        Repository<StorablePayment, String> repository = factory.create(file, durability);
+        long[] latencies = new long[operations];
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            long operationStart = System.nanoTime();
+            repository.save(StorablePayment.builder().amount((long) i).currency(Currency.getInstance("USD"))
+                    .userId("user" + i % 100).accountNumber("account" + i % 1000).build());
+            latencies[i] = System.nanoTime() - operationStart;
+        }
+        long total = System.nanoTime() - start;
+        if (repository instanceof Closeable) {
+            ((Closeable) repository).close();
+        }
+        durability.close();
+        file.delete();
+        return new BenchmarkResult(name, latencies, total);
+    }
+
+    private interface RepositoryFactory {
+        Repository<StorablePayment, String> create(File file, Durability durability) throws Exception;
+    }
+}
@@ -2,26 +2,62 @@ package pl.prokodzik.altmetrik.payments;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.prokodzik.altmetrik.payments.admission.AdmissionConfig;
+import pl.prokodzik.altmetrik.payments.admission.AdmissionController;
+import pl.prokodzik.altmetrik.payments.admission.AdmissionFilter;
+import pl.prokodzik.altmetrik.payments.codec.CborCodec;
+import pl.prokodzik.altmetrik.payments.codec.ContentNegotiation;
+import pl.prokodzik.altmetrik.payments.codec.JsonCodec;
+import pl.prokodzik.altmetrik.payments.codec.PaymentCodec;
+import pl.prokodzik.altmetrik.payments.codec.ResponseCompression;
 import pl.prokodzik.altmetrik.payments.exceptions.InputDataException;
 import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.exceptions.StorageException;
+import pl.prokodzik.altmetrik.payments.replication.Replication;
+import pl.prokodzik.altmetrik.payments.replication.ReplicationNode;
+import pl.prokodzik.altmetrik.payments.service.PaymentFilter;
 import pl.prokodzik.altmetrik.payments.service.PaymentInput;
 import pl.prokodzik.altmetrik.payments.service.PaymentsService;
 import pl.prokodzik.altmetrik.payments.service.SimplePaymentsService;
+import pl.prokodzik.altmetrik.payments.storage.BackgroundLoadingRepository;
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
 import pl.prokodzik.altmetrik.payments.storage.CsvMapper;
+import pl.prokodzik.altmetrik.payments.storage.CsvRecovery;
 import pl.prokodzik.altmetrik.payments.storage.CsvRepository;
-import pl.prokodzik.altmetrik.payments.storage.InMemRepository;
+import pl.prokodzik.altmetrik.payments.storage.Durability;
 import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.SnapshotRepository;
 import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+import pl.prokodzik.altmetrik.payments.storage.btree.BTreeRepository;
+import pl.prokodzik.altmetrik.payments.storage.index.AmountIndexedRepository;
+import pl.prokodzik.altmetrik.payments.storage.partition.CsvPartitionStore;
+import pl.prokodzik.altmetrik.payments.storage.partition.TimePartitionedRepository;
+import pl.prokodzik.altmetrik.payments.storage.tier.TieredRepository;
+import pl.prokodzik.altmetrik.payments.tracing.TracingFilter;
+import pl.prokodzik.altmetrik.payments.tracing.TracingRepository;
+import spark.Request;
+import spark.Response;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.function.Supplier;
 
+import static spark.Spark.afterAfter;
+import static spark.Spark.before;
 import static spark.Spark.delete;
 import static spark.Spark.exception;
 import static spark.Spark.get;
+import static spark.Spark.halt;
 import static spark.Spark.patch;
 import static spark.Spark.port;
 import static spark.Spark.post;
@@ -30,37 +66,112 @@ public class PaymentsRoutes {
 
 
     public static final String DEFAULT_PATH = "/payments";
+    public static final String PARTIAL_HEADER = "X-Payments-Partial";
     private static final Supplier<String> idSupplier = () -> UUID.randomUUID().toString();
+    private static final Logger logger = LoggerFactory.getLogger(PaymentsRoutes.class);
 
     public static void main(String[] args) throws IOException {
 
         final Gson gson = new GsonBuilder().serializeNulls().create();
 
-        final Repository<StorablePayment, String> repository;
-
-        repository = getRepository(args[0], idSupplier);
+        final Durability durability = Durability.parse(System.getProperty("payments.durability", "os-buffered"));
+        final ReplicationNode replicationNode = Replication.fromSystemProperties(indexed(args[0], getRepository(args[0], idSupplier, durability)));
+        final Repository<StorablePayment, String> repository = new TracingRepository(replicationNode.getRepository());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(replicationNode, durability)));
         final PaymentsService<PaymentInput, StorablePayment, String> paymentsService = new SimplePaymentsService(repository);
 
-        port(8080);
+        final AdmissionConfig admissionConfig = AdmissionConfig.fromSystemProperties();
+        final AdmissionController admissionController = new AdmissionController(admissionConfig);
+        final AdmissionFilter admissionFilter = new AdmissionFilter(admissionController, DEFAULT_PATH, admissionConfig.getTrustedProxies());
+
+        final TracingFilter tracingFilter = new TracingFilter();
+        final ContentNegotiation contentNegotiation = new ContentNegotiation(new JsonCodec(gson), new CborCodec());
+        final ResponseCompression responseCompression = new ResponseCompression(Integer.getInteger("payments.http.compressionThreshold", 8192));
+
+        port(Integer.getInteger("payments.http.port", 8080));
+
+        // Request tracing
+
+        before(tracingFilter.before());
+
+        // Followers only serve reads
+
+        if (replicationNode.isReadOnly()) {
+            before(DEFAULT_PATH, PaymentsRoutes::rejectWrites);
+            before(DEFAULT_PATH + "/*", PaymentsRoutes::rejectWrites);
+        }
+
+        // Admission control
+
+        before(DEFAULT_PATH, admissionFilter.before());
+        before(DEFAULT_PATH + "/*", admissionFilter.before());
+        afterAfter(DEFAULT_PATH, admissionFilter.after());
+        afterAfter(DEFAULT_PATH + "/*", admissionFilter.after());
+        afterAfter(tracingFilter.after());
+
+        get("/metrics/admission", (req, resp) -> gson.toJson(admissionController.getMetrics().snapshot()));
+        get("/metrics/storage", (req, resp) -> {
+            if (!repository.isFullyLoaded()) {
+                resp.header(PARTIAL_HEADER, "true");
+            }
+            return gson.toJson(repository.getMetrics());
+        });
+        get("/replication/status", (req, resp) -> gson.toJson(replicationNode.getStatus()));
 
         // Routes
 
         get(DEFAULT_PATH + "/:id", (req, resp) -> {
+            PaymentCodec codec = contentNegotiation.forResponse(req, resp);
             String paymentId = req.params().get(":id");
             StorablePayment byId = paymentsService.getById(paymentId);
-            return gson.toJson(byId);
+            return codec.encode(byId);
         });
 
         get(DEFAULT_PATH, (req, resp) -> {
+            PaymentCodec codec = contentNegotiation.forResponse(req, resp);
+            if (!repository.isFullyLoaded()) {
+                resp.header(PARTIAL_HEADER, "true");
+            }
+            String from = req.queryParams("from");
+            String to = req.queryParams("to");
+            if (from != null || to != null) {
+                List<StorablePayment> range = paymentsService.getCreatedBetween(parseTime(from, Long.MIN_VALUE), parseTime(to, Long.MAX_VALUE));
+                return responseCompression.compress(req, resp, codec.encode(range));
+            }
+            String sort = req.queryParams("sort");
+            String limit = req.queryParams("limit");
+            if (sort != null) {
+                List<StorablePayment> sorted = paymentsService.getSortedByAmount(req.queryParams("currency"),
+                        parseAmount(req.queryParams("minAmount"), Long.MIN_VALUE), parseAmount(req.queryParams("maxAmount"), Long.MAX_VALUE),
+                        isDescending(sort, req.queryParams("order")), limit == null ? Integer.MAX_VALUE : parseLimit(limit));
+                return responseCompression.compress(req, resp, codec.encode(sorted));
+            }
+            if (limit != null) {
+                List<StorablePayment> page = paymentsService.getPage(req.queryParams("after"), parseLimit(limit));
+                return responseCompression.compress(req, resp, codec.encode(page));
+            }
             List<StorablePayment> all = paymentsService.getAll();
-            return gson.toJson(all);
+            return responseCompression.compress(req, resp, codec.encode(all));
         });
 
         post(DEFAULT_PATH, (req, resp) -> {
-            String paymentInputJson = req.body();
-            PaymentInput paymentInput = gson.fromJson(paymentInputJson, PaymentInput.class);
+            PaymentCodec codec = contentNegotiation.forResponse(req, resp);
+            PaymentInput paymentInput = contentNegotiation.forRequest(req).decodeInput(req.bodyAsBytes());
             StorablePayment save = paymentsService.save(paymentInput);
-            return gson.toJson(save);
+            return codec.encode(save);
+        });
+
+        patch(DEFAULT_PATH, (req, resp) -> {
+            PaymentInput paymentInput = contentNegotiation.forRequest(req).decodeInput(req.bodyAsBytes());
+            int affected = paymentsService.updateWhere(paymentFilter(req), paymentInput);
+            resp.type(JsonCodec.CONTENT_TYPE);
+            return gson.toJson(Map.of("affected", affected));
+        });
+
+        delete(DEFAULT_PATH, (req, resp) -> {
+            int affected = paymentsService.deleteWhere(paymentFilter(req));
+            resp.type(JsonCodec.CONTENT_TYPE);
+            return gson.toJson(Map.of("affected", affected));
         });
 
         delete(DEFAULT_PATH + "/:id", (req, resp) -> {
@@ -70,11 +181,11 @@ public class PaymentsRoutes {
         });
 
         patch(DEFAULT_PATH + "/:id", (req, resp) -> {
-            String paymentInputJson = req.body();
+            PaymentCodec codec = contentNegotiation.forResponse(req, resp);
             String paymentId = req.params().get(":id");
-            PaymentInput paymentInput = gson.fromJson(paymentInputJson, PaymentInput.class);
+            PaymentInput paymentInput = contentNegotiation.forRequest(req).decodeInput(req.bodyAsBytes());
             StorablePayment update = paymentsService.update(paymentInput, paymentId);
-            return gson.toJson(update);
+            return codec.encode(update);
         });
 
 
@@ -82,30 +193,145 @@ public class PaymentsRoutes {
 
         exception(PaymentNotFoundException.class, (exception, request, response) -> {
             response.status(404);
+            response.type("text/plain");
             response.body(exception.getLocalizedMessage());
         });
 
         exception(InputDataException.class, (exception, request, response) -> {
             response.status(422);
+            response.type("text/plain");
             response.body(exception.getLocalizedMessage());
         });
+
+        exception(StorageException.class, (exception, request, response) -> {
+            logger.error("Storage failure", exception);
+            response.status(500);
+            response.type("text/plain");
+            response.body("Storage failure, the change may be partially applied");
+        });
     }
 
-    private static Repository<StorablePayment, String> getRepository(String arg, Supplier<String> idSupplier) throws IOException {
+    private static Repository<StorablePayment, String> getRepository(String arg, Supplier<String> idSupplier, Durability durability) throws IOException {
         Repository<StorablePayment, String> repository;
         switch (arg) {
             case "CSV": {
-                final File repo = new File("repo.csv");
+                final File repo = new File(System.getProperty("payments.csv.file", "repo.csv"));
                 if(!repo.exists()) {
                     repo.createNewFile();
                 }
-                repository = new CsvRepository(idSupplier, new CsvMapper(), repo);
+                final CsvMapper csvMapper = new CsvMapper();
+                final CsvRepository csvRepository = new CsvRepository(idSupplier, csvMapper, repo, durability, new CsvRecovery(csvMapper));
+                if (!Boolean.parseBoolean(System.getProperty("payments.csv.backgroundLoad", "true"))) {
+                    csvRepository.warmUp();
+                    return csvRepository;
+                }
+                repository = new BackgroundLoadingRepository(csvRepository).start();
                 return repository;
             }
+            case "BTREE": {
+                final File repo = new File("repo.btree");
+                repository = new BTreeRepository(idSupplier, new BinaryMapper(), repo, Integer.getInteger("payments.btree.cachePages", 1024), durability);
+                return repository;
+            }
+            case "TIER": {
+                final File spillDirectory = new File(System.getProperty("payments.tier.dir", "repo.tier"));
+                return new TieredRepository(idSupplier, new BinaryMapper(), spillDirectory, Integer.getInteger("payments.tier.hotCapacity", 100_000));
+            }
+            case "PART": {
+                final File directory = new File(System.getProperty("payments.partition.dir", "repo.partitions"));
+                return new TimePartitionedRepository(idSupplier, new CsvPartitionStore(directory, new CsvMapper(), durability), Clock.systemUTC(),
+                        Duration.ofMinutes(Long.getLong("payments.partition.minutes", 60)),
+                        Duration.ofHours(Long.getLong("payments.partition.retentionHours", 0)));
+            }
             case "MEM":
-            default: return new InMemRepository(idSupplier);
+            default: return new SnapshotRepository(idSupplier);
         }
 
     }
 
+    /**
+     * The amount index keeps every payment in memory, so it is on by default only for storages which already do.
+     * {@code payments.index.amount} turns it on or off for any storage.
+     */
+    private static Repository<StorablePayment, String> indexed(String arg, Repository<StorablePayment, String> repository) {
+        boolean inMemory = "MEM".equals(arg) || "CSV".equals(arg);
+        if (!Boolean.parseBoolean(System.getProperty("payments.index.amount", String.valueOf(inMemory)))) {
+            return repository;
+        }
+        return new AmountIndexedRepository(repository);
+    }
+
+    private static void rejectWrites(Request request, Response response) {
+        if (!"GET".equals(request.requestMethod())) {
+            halt(405, "Read-only replica, send writes to the leader");
+        }
+    }
+
+    private static void shutdown(ReplicationNode replicationNode, Durability durability) {
+        try {
+            replicationNode.close();
+        } catch (IOException e) {
+            logger.error("Closing repository failed", e);
+        }
+        durability.close();
+        LogManager.shutdown();
+    }
+
+    private static PaymentFilter paymentFilter(Request request) {
+        return new PaymentFilter(request.queryParams("userId"), request.queryParams("accountNumber"), request.queryParams("currency"));
+    }
+
+    /**
+     * Epoch millis or ISO-8601 instant, e.g. {@code 2021-03-01T10:15:30Z}.
+     */
+    private static long parseTime(String time, long defaultTime) throws InputDataException {
+        if (time == null || time.isEmpty()) {
+            return defaultTime;
+        }
+        try {
+            return Long.parseLong(time);
+        } catch (NumberFormatException e) {
+            try {
+                return Instant.parse(time).toEpochMilli();
+            } catch (DateTimeParseException | ArithmeticException invalid) {
+                throw new InputDataException("Invalid time: " + time);
+            }
+        }
+    }
+
+    private static long parseAmount(String amount, long defaultAmount) throws InputDataException {
+        if (amount == null || amount.isEmpty()) {
+            return defaultAmount;
+        }
+        try {
+            return Long.parseLong(amount);
+        } catch (NumberFormatException e) {
+            throw new InputDataException("Invalid amount: " + amount);
+        }
+    }
+
+    /**
+     * Only sorting by amount is supported, ascending unless {@code order=desc}.
+     */
+    private static boolean isDescending(String sort, String order) throws InputDataException {
+        if (!"amount".equals(sort)) {
+            throw new InputDataException("Unsupported sort: " + sort);
+        }
+        if (order == null || "asc".equals(order)) {
+            return false;
+        }
+        if ("desc".equals(order)) {
+            return true;
+        }
+        throw new InputDataException("Invalid order: " + order);
+    }
+
+    private static int parseLimit(String limit) throws InputDataException {
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            throw new InputDataException("Invalid page limit: " + limit);
+        }
+    }
+
 }
@@ -0,0 +1,43 @@
+package pl.prokodzik.altmetrik.payments.admission;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Getter
+@Builder
+public class AdmissionConfig {
+    private final double clientPermitsPerSecond;
+    private final int clientBurst;
+    private final int maxConcurrentReads;
+    private final int maxConcurrentWrites;
+    private final int maxConcurrentLists;
+    private final long targetQueueLatencyMillis;
+    /**
+     * Remote addresses whose {@code X-Client-Id} header is trusted, e.g. of a reverse proxy authenticating clients.
+     */
+    @Builder.Default
+    private final Set<String> trustedProxies = Set.of();
+
+    public static AdmissionConfig fromSystemProperties() {
+        return AdmissionConfig.builder()
+                .clientPermitsPerSecond(Integer.getInteger("payments.admission.clientRate", 100))
+                .clientBurst(Integer.getInteger("payments.admission.clientBurst", 200))
+                .maxConcurrentReads(Integer.getInteger("payments.admission.maxReads", 64))
+                .maxConcurrentWrites(Integer.getInteger("payments.admission.maxWrites", 16))
+                .maxConcurrentLists(Integer.getInteger("payments.admission.maxLists", 4))
+                .targetQueueLatencyMillis(Integer.getInteger("payments.admission.targetQueueLatencyMs", 50))
+                .trustedProxies(parseAddresses(System.getProperty("payments.admission.trustedProxies", "")))
+                .build();
+    }
+
+    private static Set<String> parseAddresses(final String addresses) {
+        return Arrays.stream(addresses.split(","))
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
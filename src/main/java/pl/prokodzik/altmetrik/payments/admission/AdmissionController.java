@@ -0,0 +1,100 @@
+package pl.prokodzik.altmetrik.payments.admission;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+public class AdmissionController {
+
+    private static final int MAX_TRACKED_CLIENTS = 10_000;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AdmissionConfig config;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final Map<OperationClass, ConcurrencyLimiter> limiters = new EnumMap<>(OperationClass.class);
+    private final LoadShedder loadShedder;
+    private final AdmissionMetrics metrics = new AdmissionMetrics();
+    private final TokenBucket overflowBucket;
+    private final AtomicLong lastSweep;
+
+    public AdmissionController(final AdmissionConfig admissionConfig) {
+        this(admissionConfig, System::nanoTime);
+    }
+
+    AdmissionController(final AdmissionConfig admissionConfig, final LongSupplier clock) {
+        config = admissionConfig;
+        nanoClock = clock;
+        limiters.put(OperationClass.READ, new ConcurrencyLimiter(config.getMaxConcurrentReads()));
+        limiters.put(OperationClass.WRITE, new ConcurrencyLimiter(config.getMaxConcurrentWrites()));
+        limiters.put(OperationClass.LIST, new ConcurrencyLimiter(config.getMaxConcurrentLists()));
+        loadShedder = new LoadShedder(config.getTargetQueueLatencyMillis());
+        long now = nanoClock.getAsLong();
+        overflowBucket = new TokenBucket(config.getClientPermitsPerSecond(), config.getClientBurst(), now);
+        lastSweep = new AtomicLong(now - SWEEP_INTERVAL_NANOS);
+    }
+
+    public Decision admit(final String clientId, final OperationClass operationClass, final long queueLatencyMillis) {
+        loadShedder.record(queueLatencyMillis);
+        Decision decision = decide(clientId, operationClass);
+        metrics.record(operationClass, decision);
+        return decision;
+    }
+
+    public void release(final OperationClass operationClass) {
+        limiters.get(operationClass).release();
+    }
+
+    public AdmissionMetrics getMetrics() {
+        return metrics;
+    }
+
+    public LoadShedder getLoadShedder() {
+        return loadShedder;
+    }
+
+    private Decision decide(final String clientId, final OperationClass operationClass) {
+        long now = nanoClock.getAsLong();
+        if (!clientBucket(clientId, now).tryAcquire(now)) {
+            return Decision.RATE_LIMITED;
+        }
+        if (loadShedder.shouldShed(operationClass)) {
+            return Decision.SHED;
+        }
+        if (!limiters.get(operationClass).tryAcquire()) {
+            return Decision.OVERLOADED;
+        }
+        return Decision.ADMITTED;
+    }
+
+    private TokenBucket clientBucket(final String clientId, final long now) {
+        TokenBucket bucket = clientBuckets.get(clientId);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (clientBuckets.size() >= MAX_TRACKED_CLIENTS) {
+            sweepIdle(now);
+            if (clientBuckets.size() >= MAX_TRACKED_CLIENTS) {
+                return overflowBucket;
+            }
+        }
+        return clientBuckets.computeIfAbsent(clientId,
+                id -> new TokenBucket(config.getClientPermitsPerSecond(), config.getClientBurst(), now));
+    }
+
+    /**
+     * Forgets clients whose buckets refilled, at most once a second. Until a sweep makes room new clients
+     * share one bucket, so a flood of new clients neither grows the map nor scans it on every request.
+     */
+    private void sweepIdle(final long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        clientBuckets.values().removeIf(idle -> idle.isFull(now));
+    }
+}
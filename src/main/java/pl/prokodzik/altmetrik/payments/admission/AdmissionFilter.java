@@ -0,0 +1,73 @@
+package pl.prokodzik.altmetrik.payments.admission;
+
+import org.eclipse.jetty.server.Request;
+import spark.Filter;
+
+import java.util.Set;
+
+import static spark.Spark.halt;
+
+public class AdmissionFilter {
+
+    private static final String CLIENT_HEADER = "X-Client-Id";
+    private static final String PERMIT_ATTRIBUTE = "admission.permit";
+
+    private final AdmissionController admissionController;
+    private final String listPath;
+    private final Set<String> trustedProxies;
+
+    public AdmissionFilter(final AdmissionController controller, final String path) {
+        this(controller, path, Set.of());
+    }
+
+    public AdmissionFilter(final AdmissionController controller, final String path, final Set<String> proxies) {
+        admissionController = controller;
+        listPath = path;
+        trustedProxies = proxies;
+    }
+
+    public Filter before() {
+        return (req, resp) -> {
+            OperationClass operationClass = classify(req.requestMethod(), req.pathInfo());
+            Decision decision = admissionController.admit(clientId(req.ip(), req.headers(CLIENT_HEADER)), operationClass, queueLatencyMillis(req));
+            if (decision != Decision.ADMITTED) {
+                resp.header("Retry-After", "1");
+                halt(decision.getStatus(), decision == Decision.RATE_LIMITED ? "Too many requests" : "Service overloaded");
+            }
+            req.attribute(PERMIT_ATTRIBUTE, operationClass);
+        };
+    }
+
+    public Filter after() {
+        return (req, resp) -> {
+            OperationClass permit = req.attribute(PERMIT_ATTRIBUTE);
+            if (permit != null) {
+                req.raw().removeAttribute(PERMIT_ATTRIBUTE);
+                admissionController.release(permit);
+            }
+        };
+    }
+
+    OperationClass classify(final String method, final String path) {
+        if (!"GET".equals(method)) {
+            return OperationClass.WRITE;
+        }
+        return listPath.equals(path) ? OperationClass.LIST : OperationClass.READ;
+    }
+
+    /**
+     * Clients are told apart by remote address. The client id header can be set to anything by the caller,
+     * so it is used only on requests coming from trusted proxies.
+     */
+    String clientId(final String remoteAddress, final String clientHeader) {
+        return clientHeader != null && trustedProxies.contains(remoteAddress) ? clientHeader : remoteAddress;
+    }
+
+    private long queueLatencyMillis(final spark.Request req) {
+        Request baseRequest = Request.getBaseRequest(req.raw());
+        if (baseRequest == null || baseRequest.getTimeStamp() == 0) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - baseRequest.getTimeStamp());
+    }
+}
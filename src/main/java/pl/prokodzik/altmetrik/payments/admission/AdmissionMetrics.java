@@ -0,0 +1,39 @@
+package pl.prokodzik.altmetrik.payments.admission;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AdmissionMetrics {
+
+    private final Map<OperationClass, Map<Decision, LongAdder>> counters = new EnumMap<>(OperationClass.class);
+
+    public AdmissionMetrics() {
+        for (OperationClass operationClass : OperationClass.values()) {
+            Map<Decision, LongAdder> decisions = new EnumMap<>(Decision.class);
+            for (Decision decision : Decision.values()) {
+                decisions.put(decision, new LongAdder());
+            }
+            counters.put(operationClass, decisions);
+        }
+    }
+
+    void record(final OperationClass operationClass, final Decision decision) {
+        counters.get(operationClass).get(decision).increment();
+    }
+
+    public long get(final OperationClass operationClass, final Decision decision) {
+        return counters.get(operationClass).get(decision).sum();
+    }
+
+    public Map<String, Map<String, Long>> snapshot() {
+        Map<String, Map<String, Long>> snapshot = new LinkedHashMap<>();
+        counters.forEach((operationClass, decisions) -> {
+            Map<String, Long> values = new LinkedHashMap<>();
+            decisions.forEach((decision, counter) -> values.put(decision.name(), counter.sum()));
+            snapshot.put(operationClass.name(), values);
+        });
+        return snapshot;
+    }
+}
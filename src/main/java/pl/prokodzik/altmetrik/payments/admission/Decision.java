@@ -0,0 +1,12 @@
+package pl.prokodzik.altmetrik.payments.admission;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum Decision {
+    ADMITTED(200), RATE_LIMITED(429), OVERLOADED(503), SHED(503);
+
+    private final int status;
+}
@@ -0,0 +1,45 @@
+package pl.prokodzik.altmetrik.payments.admission;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps an exponentially weighted moving average of the time requests spent queued before a worker
+ * picked them up. Above the target latency requests are dropped with probability growing linearly
+ * with the overshoot, so the queue drains quickly instead of every client timing out.
+ */
+public class LoadShedder {
+
+    private static final double SMOOTHING = 0.1;
+
+    private final double targetLatencyMillis;
+    private final AtomicLong averageLatencyBits = new AtomicLong(Double.doubleToLongBits(0));
+
+    public LoadShedder(final long targetLatencyMillis) {
+        this.targetLatencyMillis = targetLatencyMillis;
+    }
+
+    public void record(final long queueLatencyMillis) {
+        while (true) {
+            long bits = averageLatencyBits.get();
+            double average = Double.longBitsToDouble(bits);
+            double updated = average + SMOOTHING * (queueLatencyMillis - average);
+            if (averageLatencyBits.compareAndSet(bits, Double.doubleToLongBits(updated))) {
+                return;
+            }
+        }
+    }
+
+    public boolean shouldShed(final OperationClass operationClass) {
+        double overshoot = (getAverageLatencyMillis() - targetLatencyMillis) / targetLatencyMillis;
+        if (overshoot <= 0) {
+            return false;
+        }
+        double probability = operationClass == OperationClass.LIST ? overshoot : overshoot / 2;
+        return ThreadLocalRandom.current().nextDouble() < probability;
+    }
+
+    public double getAverageLatencyMillis() {
+        return Double.longBitsToDouble(averageLatencyBits.get());
+    }
+}
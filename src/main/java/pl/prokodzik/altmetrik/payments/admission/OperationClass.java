@@ -0,0 +1,5 @@
+package pl.prokodzik.altmetrik.payments.admission;
+
+public enum OperationClass {
+    READ, WRITE, LIST
+}
@@ -0,0 +1,37 @@
+package pl.prokodzik.altmetrik.payments.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented as generic cell rate algorithm: a single CAS on the theoretical
+ * arrival time of the next request replaces counting tokens and refill timestamps separately.
+ */
+public class TokenBucket {
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final AtomicLong theoreticalArrivalTime;
+
+    public TokenBucket(final double permitsPerSecond, final int burst, final long nowNanos) {
+        emissionIntervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+        burstToleranceNanos = emissionIntervalNanos * Math.max(0, burst - 1);
+        theoreticalArrivalTime = new AtomicLong(nowNanos);
+    }
+
+    public boolean tryAcquire(final long nowNanos) {
+        while (true) {
+            long tat = theoreticalArrivalTime.get();
+            long start = Math.max(tat, nowNanos);
+            if (start - nowNanos > burstToleranceNanos) {
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, start + emissionIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean isFull(final long nowNanos) {
+        return theoreticalArrivalTime.get() <= nowNanos;
+    }
+}
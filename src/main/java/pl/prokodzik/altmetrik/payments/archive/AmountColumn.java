@@ -0,0 +1,87 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Amounts, and creation times in the same way, stored in blocks of {@value #BLOCK_SIZE} values. Each block keeps its minimum as frame of reference
+ * and bit-packs the offsets from it, missing amounts are marked in a separate null bitmap.
+ */
+final class AmountColumn {
+
+    static final int BLOCK_SIZE = 1024;
+
+    private final long[] values;
+    private final long[] nulls;
+
+    private AmountColumn(final long[] values, final long[] nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    long[] values() {
+        return values;
+    }
+
+    boolean isNull(final int row) {
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    long[] nullBitmap() {
+        return nulls;
+    }
+
+    static void write(final Long[] amounts, final DataOutput out) throws IOException {
+        long[] values = new long[amounts.length];
+        long[] nulls = new long[Selection.words(amounts.length)];
+        for (int row = 0; row < amounts.length; row++) {
+            if (amounts[row] == null) {
+                nulls[row >>> 6] |= 1L << row;
+            } else {
+                values[row] = amounts[row];
+            }
+        }
+        for (long word : nulls) {
+            out.writeLong(word);
+        }
+        for (int from = 0; from < values.length; from += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, values.length - from);
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int row = from; row < from + count; row++) {
+                if ((nulls[row >>> 6] & (1L << row)) == 0) {
+                    min = Math.min(min, values[row]);
+                    max = Math.max(max, values[row]);
+                }
+            }
+            if (min > max) {
+                min = 0;
+                max = 0;
+            }
+            for (int row = from; row < from + count; row++) {
+                if ((nulls[row >>> 6] & (1L << row)) != 0) {
+                    values[row] = min;
+                }
+            }
+            int width = BitPacking.bitWidth(max - min);
+            out.writeLong(min);
+            out.writeByte(width);
+            BitPacking.pack(values, from, count, min, width, out);
+        }
+    }
+
+    static AmountColumn read(final DataInput in, final int rows) throws IOException {
+        long[] nulls = new long[Selection.words(rows)];
+        for (int i = 0; i < nulls.length; i++) {
+            nulls[i] = in.readLong();
+        }
+        long[] values = new long[rows];
+        for (int from = 0; from < rows; from += BLOCK_SIZE) {
+            long min = in.readLong();
+            int width = in.readUnsignedByte();
+            BitPacking.unpack(in, values, from, Math.min(BLOCK_SIZE, rows - from), min, width);
+        }
+        return new AmountColumn(values, nulls);
+    }
+}
@@ -0,0 +1,183 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+import java.io.IOException;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Filters and aggregates evaluated one column at a time. Every filter narrows a bitset of selected rows
+ * working only on the primitive array of its column, string filters compare dictionary codes
+ * instead of strings. Aggregates skip payments without amount.
+ */
+public class ArchiveScan {
+
+    private static final int MAX_HISTOGRAM_BUCKETS = 1 << 20;
+
+    private final ColumnarArchive archive;
+    private final Selection selection;
+
+    ArchiveScan(final ColumnarArchive columnarArchive) {
+        archive = columnarArchive;
+        selection = new Selection(columnarArchive.getRowCount());
+    }
+
+    public ArchiveScan currency(final Currency currency) throws IOException {
+        return equalTo(Column.CURRENCY, currency.getCurrencyCode());
+    }
+
+    public ArchiveScan userId(final String userId) throws IOException {
+        return equalTo(Column.USER_ID, userId);
+    }
+
+    public ArchiveScan accountNumber(final String accountNumber) throws IOException {
+        return equalTo(Column.ACCOUNT_NUMBER, accountNumber);
+    }
+
+    public ArchiveScan amountBetween(final long min, final long max) throws IOException {
+        AmountColumn amounts = archive.amounts();
+        long[] values = amounts.values();
+        long[] nulls = amounts.nullBitmap();
+        for (int w = 0; w < selection.wordCount(); w++) {
+            if (selection.word(w) == 0) {
+                continue;
+            }
+            long matching = 0;
+            int base = w << 6;
+            int end = Math.min(64, selection.rows() - base);
+            for (int bit = 0; bit < end; bit++) {
+                long value = values[base + bit];
+                if (value >= min && value <= max) {
+                    matching |= 1L << bit;
+                }
+            }
+            selection.retain(w, matching & ~nulls[w]);
+        }
+        return this;
+    }
+
+    public int count() {
+        return selection.count();
+    }
+
+    public long sum() throws IOException {
+        AmountColumn amounts = archive.amounts();
+        long[] values = amounts.values();
+        long[] nulls = amounts.nullBitmap();
+        long sum = 0;
+        for (int w = 0; w < selection.wordCount(); w++) {
+            long word = selection.word(w) & ~nulls[w];
+            while (word != 0) {
+                sum += values[(w << 6) + Long.numberOfTrailingZeros(word)];
+                word &= word - 1;
+            }
+        }
+        return sum;
+    }
+
+    public Map<Currency, Long> sumByCurrency() throws IOException {
+        return byCurrency(true);
+    }
+
+    public Map<Currency, Long> countByCurrency() throws IOException {
+        return byCurrency(false);
+    }
+
+    /**
+     * Counts selected amounts in buckets of given width, keys are lower bounds of non-empty buckets.
+     */
+    public SortedMap<Long, Long> amountHistogram(final long bucketWidth) throws IOException {
+        if (bucketWidth <= 0) {
+            throw new IllegalArgumentException("Bucket width has to be positive, got " + bucketWidth);
+        }
+        AmountColumn amounts = archive.amounts();
+        long[] values = amounts.values();
+        long[] nulls = amounts.nullBitmap();
+        long minBucket = Long.MAX_VALUE;
+        long maxBucket = Long.MIN_VALUE;
+        for (int w = 0; w < selection.wordCount(); w++) {
+            long word = selection.word(w) & ~nulls[w];
+            while (word != 0) {
+                long bucket = Math.floorDiv(values[(w << 6) + Long.numberOfTrailingZeros(word)], bucketWidth);
+                minBucket = Math.min(minBucket, bucket);
+                maxBucket = Math.max(maxBucket, bucket);
+                word &= word - 1;
+            }
+        }
+        SortedMap<Long, Long> histogram = new TreeMap<>();
+        if (minBucket > maxBucket) {
+            return histogram;
+        }
+        if (maxBucket - minBucket >= MAX_HISTOGRAM_BUCKETS) {
+            throw new IllegalArgumentException("Bucket width " + bucketWidth + " gives more than " + MAX_HISTOGRAM_BUCKETS + " buckets");
+        }
+        long[] counts = new long[(int) (maxBucket - minBucket + 1)];
+        for (int w = 0; w < selection.wordCount(); w++) {
+            long word = selection.word(w) & ~nulls[w];
+            while (word != 0) {
+                counts[(int) (Math.floorDiv(values[(w << 6) + Long.numberOfTrailingZeros(word)], bucketWidth) - minBucket)]++;
+                word &= word - 1;
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                histogram.put((minBucket + i) * bucketWidth, counts[i]);
+            }
+        }
+        return histogram;
+    }
+
+    private ArchiveScan equalTo(final Column column, final String value) throws IOException {
+        DictionaryColumn dictionary = archive.dictionary(column);
+        int code = dictionary.codeOf(value);
+        if (code < 0) {
+            selection.clear();
+            return this;
+        }
+        int[] codes = dictionary.codes();
+        for (int w = 0; w < selection.wordCount(); w++) {
+            if (selection.word(w) == 0) {
+                continue;
+            }
+            long matching = 0;
+            int base = w << 6;
+            int end = Math.min(64, selection.rows() - base);
+            for (int bit = 0; bit < end; bit++) {
+                if (codes[base + bit] == code) {
+                    matching |= 1L << bit;
+                }
+            }
+            selection.retain(w, matching);
+        }
+        return this;
+    }
+
+    private Map<Currency, Long> byCurrency(final boolean sum) throws IOException {
+        AmountColumn amounts = archive.amounts();
+        DictionaryColumn currencies = archive.dictionary(Column.CURRENCY);
+        long[] values = amounts.values();
+        long[] nulls = amounts.nullBitmap();
+        int[] codes = currencies.codes();
+        long[] totals = new long[currencies.dictionarySize()];
+        long[] counts = new long[currencies.dictionarySize()];
+        for (int w = 0; w < selection.wordCount(); w++) {
+            long word = selection.word(w) & ~nulls[w];
+            while (word != 0) {
+                int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                totals[codes[row]] += values[row];
+                counts[codes[row]]++;
+                word &= word - 1;
+            }
+        }
+        Map<Currency, Long> byCurrency = new HashMap<>();
+        for (int code = 0; code < totals.length; code++) {
+            String currency = currencies.value(code);
+            if (currency != null && counts[code] > 0) {
+                byCurrency.put(Currency.getInstance(currency), sum ? totals[code] : counts[code]);
+            }
+        }
+        return byCurrency;
+    }
+}
@@ -0,0 +1,87 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Writes payments into a columnar archive file: one section per column followed by a footer
+ * with the offset and length of each section, so readers load only the columns they scan.
+ */
+public class ArchiveWriter {
+
+    static final int MAGIC = 0x50434f4c;
+    static final byte VERSION = 2;
+    static final int TRAILER_SIZE = 12;
+
+    public long write(final Collection<StorablePayment> payments, final File file) throws IOException {
+        int rows = payments.size();
+        String[] ids = new String[rows];
+        Long[] amounts = new Long[rows];
+        String[] currencies = new String[rows];
+        String[] userIds = new String[rows];
+        String[] accountNumbers = new String[rows];
+        Long[] createdAts = new Long[rows];
+        int row = 0;
+        for (StorablePayment payment : payments) {
+            ids[row] = payment.getId();
+            amounts[row] = payment.getAmount();
+            currencies[row] = payment.getCurrency() == null ? null : payment.getCurrency().getCurrencyCode();
+            userIds[row] = payment.getUserId();
+            accountNumbers[row] = payment.getAccountNumber();
+            createdAts[row] = payment.getCreatedAt();
+            row++;
+        }
+        Map<Column, long[]> sections = new EnumMap<>(Column.class);
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try (DataOutputStream out = new DataOutputStream(counter)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            for (Column column : Column.values()) {
+                long offset = counter.getCount();
+                switch (column) {
+                    case ID:
+                        for (String id : ids) {
+                            out.writeUTF(id);
+                        }
+                        break;
+                    case AMOUNT:
+                        AmountColumn.write(amounts, out);
+                        break;
+                    case CURRENCY:
+                        DictionaryColumn.write(currencies, out);
+                        break;
+                    case USER_ID:
+                        DictionaryColumn.write(userIds, out);
+                        break;
+                    case ACCOUNT_NUMBER:
+                        DictionaryColumn.write(accountNumbers, out);
+                        break;
+                    case CREATED_AT:
+                        AmountColumn.write(createdAts, out);
+                        break;
+                }
+                sections.put(column, new long[]{offset, counter.getCount() - offset});
+            }
+            long footerOffset = counter.getCount();
+            out.writeInt(rows);
+            out.writeInt(sections.size());
+            for (Map.Entry<Column, long[]> section : sections.entrySet()) {
+                out.writeUTF(section.getKey().name());
+                out.writeLong(section.getValue()[0]);
+                out.writeLong(section.getValue()[1]);
+            }
+            out.writeLong(footerOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+            return counter.getCount();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Packs values as offsets from a base value using the smallest bit width able to hold the largest offset.
+ * Values are written back to back into 64 bit words, a value may span two words.
+ */
+final class BitPacking {
+
+    private BitPacking() {
+    }
+
+    static int bitWidth(final long maxOffset) {
+        return 64 - Long.numberOfLeadingZeros(maxOffset);
+    }
+
+    static int packedWords(final int count, final int width) {
+        return (int) (((long) count * width + 63) / 64);
+    }
+
+    static void pack(final long[] values, final int from, final int count, final long base, final int width, final DataOutput out) throws IOException {
+        if (width == 0) {
+            return;
+        }
+        long word = 0;
+        int used = 0;
+        for (int i = from; i < from + count; i++) {
+            long offset = values[i] - base;
+            word |= offset << used;
+            if (used + width >= 64) {
+                out.writeLong(word);
+                int written = 64 - used;
+                word = written == 64 ? 0 : offset >>> written;
+                used = used + width - 64;
+            } else {
+                used += width;
+            }
+        }
+        if (used > 0) {
+            out.writeLong(word);
+        }
+    }
+
+    static void unpack(final DataInput in, final long[] target, final int from, final int count, final long base, final int width) throws IOException {
+        if (width == 0) {
+            for (int i = from; i < from + count; i++) {
+                target[i] = base;
+            }
+            return;
+        }
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        long word = 0;
+        int used = 64;
+        for (int i = from; i < from + count; i++) {
+            if (used == 64) {
+                word = in.readLong();
+                used = 0;
+            }
+            long value = word >>> used;
+            if (used + width <= 64) {
+                used += width;
+            } else {
+                int lowBits = 64 - used;
+                word = in.readLong();
+                value |= word << lowBits;
+                used = width - lowBits;
+            }
+            target[i] = base + (value & mask);
+        }
+    }
+}
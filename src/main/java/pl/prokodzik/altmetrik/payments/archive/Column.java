@@ -0,0 +1,5 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+enum Column {
+    ID, AMOUNT, CURRENCY, USER_ID, ACCOUNT_NUMBER, CREATED_AT
+}
@@ -0,0 +1,156 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read side of the columnar archive. Opening reads only the footer, every column is loaded from disk
+ * the first time a scan needs it and then kept decoded in primitive arrays.
+ */
+public class ColumnarArchive implements Closeable {
+
+    private final File file;
+    private final FileChannel channel;
+    private final int rows;
+    private final Map<Column, long[]> sections = new EnumMap<>(Column.class);
+    private final Map<Column, Object> loaded = new EnumMap<>(Column.class);
+    private long bytesRead;
+
+    public ColumnarArchive(final File archiveFile) throws IOException, DataCorruptionException {
+        file = archiveFile;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < ArchiveWriter.TRAILER_SIZE) {
+                throw new DataCorruptionException("File " + file + " is too short to be a payments archive");
+            }
+            DataInputStream trailer = read(size - ArchiveWriter.TRAILER_SIZE, ArchiveWriter.TRAILER_SIZE);
+            long footerOffset = trailer.readLong();
+            if (trailer.readInt() != ArchiveWriter.MAGIC || footerOffset < 0 || footerOffset > size - ArchiveWriter.TRAILER_SIZE) {
+                throw new DataCorruptionException("File " + file + " is not a payments archive");
+            }
+            DataInputStream footer = read(footerOffset, size - ArchiveWriter.TRAILER_SIZE - footerOffset);
+            rows = footer.readInt();
+            int columns = footer.readInt();
+            for (int i = 0; i < columns; i++) {
+                String name = footer.readUTF();
+                long offset = footer.readLong();
+                long length = footer.readLong();
+                if (offset < 0 || length < 0 || offset > footerOffset - length) {
+                    throw new DataCorruptionException("Column " + name + " lies outside of archive " + file);
+                }
+                sections.put(Column.valueOf(name), new long[]{offset, length});
+            }
+            for (Column column : Column.values()) {
+                if (!sections.containsKey(column) && column != Column.CREATED_AT) {
+                    throw new DataCorruptionException("Column " + column + " missing from archive " + file);
+                }
+            }
+        } catch (IOException | DataCorruptionException | IllegalArgumentException e) {
+            channel.close();
+            if (e instanceof IllegalArgumentException) {
+                throw new DataCorruptionException("Unknown column in archive " + file + ". " + e.getLocalizedMessage());
+            }
+            throw e;
+        }
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public synchronized long getBytesRead() {
+        return bytesRead;
+    }
+
+    public ArchiveScan scan() {
+        return new ArchiveScan(this);
+    }
+
+    public List<StorablePayment> readAll() throws IOException {
+        String[] ids = ids();
+        AmountColumn amounts = amounts();
+        DictionaryColumn currencies = dictionary(Column.CURRENCY);
+        DictionaryColumn userIds = dictionary(Column.USER_ID);
+        DictionaryColumn accountNumbers = dictionary(Column.ACCOUNT_NUMBER);
+        AmountColumn createdAts = sections.containsKey(Column.CREATED_AT) ? longs(Column.CREATED_AT) : null;
+        List<StorablePayment> payments = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            String currency = currencies.value(currencies.codes()[row]);
+            payments.add(new StorablePayment(ids[row], amounts.isNull(row) ? null : amounts.values()[row],
+                    currency == null ? null : Currency.getInstance(currency),
+                    userIds.value(userIds.codes()[row]), accountNumbers.value(accountNumbers.codes()[row]),
+                    createdAts == null || createdAts.isNull(row) ? null : createdAts.values()[row]));
+        }
+        return payments;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    AmountColumn amounts() throws IOException {
+        return longs(Column.AMOUNT);
+    }
+
+    /**
+     * Amounts or creation times. Archives written before creation times were archived have no such column.
+     */
+    synchronized AmountColumn longs(final Column name) throws IOException {
+        AmountColumn column = (AmountColumn) loaded.get(name);
+        if (column == null) {
+            column = AmountColumn.read(section(name), rows);
+            loaded.put(name, column);
+        }
+        return column;
+    }
+
+    synchronized DictionaryColumn dictionary(final Column name) throws IOException {
+        DictionaryColumn column = (DictionaryColumn) loaded.get(name);
+        if (column == null) {
+            column = DictionaryColumn.read(section(name), rows);
+            loaded.put(name, column);
+        }
+        return column;
+    }
+
+    private synchronized String[] ids() throws IOException {
+        String[] ids = (String[]) loaded.get(Column.ID);
+        if (ids == null) {
+            DataInputStream in = section(Column.ID);
+            ids = new String[rows];
+            for (int row = 0; row < rows; row++) {
+                ids[row] = in.readUTF();
+            }
+            loaded.put(Column.ID, ids);
+        }
+        return ids;
+    }
+
+    private DataInputStream section(final Column column) {
+        long[] section = sections.get(column);
+        return read(section[0], section[1]);
+    }
+
+    /**
+     * Streams the bytes from the file, columns are decoded while read and may be larger than 2 GiB.
+     */
+    private DataInputStream read(final long offset, final long length) {
+        bytesRead += length;
+        return new DataInputStream(new BufferedInputStream(new SectionInputStream(channel, offset, length)));
+    }
+}
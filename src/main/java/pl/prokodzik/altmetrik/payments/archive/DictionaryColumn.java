@@ -0,0 +1,81 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Strings replaced with codes into a dictionary of distinct values. Codes are bit-packed with the width
+ * needed for the dictionary size, so low cardinality columns take a few bits per row.
+ */
+final class DictionaryColumn {
+
+    private final String[] dictionary;
+    private final int[] codes;
+
+    private DictionaryColumn(final String[] dictionary, final int[] codes) {
+        this.dictionary = dictionary;
+        this.codes = codes;
+    }
+
+    int[] codes() {
+        return codes;
+    }
+
+    int dictionarySize() {
+        return dictionary.length;
+    }
+
+    String value(final int code) {
+        return dictionary[code];
+    }
+
+    int codeOf(final String value) {
+        for (int code = 0; code < dictionary.length; code++) {
+            if (value == null ? dictionary[code] == null : value.equals(dictionary[code])) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    static void write(final String[] values, final DataOutput out) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        long[] codes = new long[values.length];
+        for (int row = 0; row < values.length; row++) {
+            Integer code = dictionary.get(values[row]);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(values[row], code);
+            }
+            codes[row] = code;
+        }
+        out.writeInt(dictionary.size());
+        for (String value : dictionary.keySet()) {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+        int width = BitPacking.bitWidth(Math.max(0, dictionary.size() - 1));
+        out.writeByte(width);
+        BitPacking.pack(codes, 0, codes.length, 0, width, out);
+    }
+
+    static DictionaryColumn read(final DataInput in, final int rows) throws IOException {
+        String[] dictionary = new String[in.readInt()];
+        for (int code = 0; code < dictionary.length; code++) {
+            dictionary[code] = in.readBoolean() ? in.readUTF() : null;
+        }
+        int width = in.readUnsignedByte();
+        long[] packed = new long[rows];
+        BitPacking.unpack(in, packed, 0, rows, 0, width);
+        int[] codes = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            codes[row] = (int) packed[row];
+        }
+        return new DictionaryColumn(dictionary, codes);
+    }
+}
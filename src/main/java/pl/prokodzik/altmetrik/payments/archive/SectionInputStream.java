@@ -0,0 +1,48 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads one section of the archive with positional reads, so sections of any length are streamed instead of
+ * being copied into a single buffer, and concurrent readers don't share a channel position.
+ */
+class SectionInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private long position;
+    private long remaining;
+
+    SectionInputStream(final FileChannel channel, final long offset, final long length) {
+        this.channel = channel;
+        position = offset;
+        remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (remaining == 0) {
+            return -1;
+        }
+        int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+        if (read < 0) {
+            throw new IOException("Unexpected end of archive section at " + position);
+        }
+        position += read;
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,55 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+/**
+ * Bitset of rows still matching the filters of a scan.
+ */
+final class Selection {
+
+    private final long[] words;
+    private final int rows;
+
+    Selection(final int rows) {
+        this.rows = rows;
+        words = new long[words(rows)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = -1L;
+        }
+        if ((rows & 63) != 0) {
+            words[words.length - 1] = (1L << rows) - 1;
+        }
+    }
+
+    static int words(final int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    long word(final int index) {
+        return words[index];
+    }
+
+    int wordCount() {
+        return words.length;
+    }
+
+    void retain(final int index, final long mask) {
+        words[index] &= mask;
+    }
+
+    void clear() {
+        for (int i = 0; i < words.length; i++) {
+            words[i] = 0;
+        }
+    }
+
+    int count() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,216 @@
+package pl.prokodzik.altmetrik.payments.codec;
+
+import pl.prokodzik.altmetrik.payments.exceptions.InputDataException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static pl.prokodzik.altmetrik.payments.codec.CborWriter.ARRAY;
+import static pl.prokodzik.altmetrik.payments.codec.CborWriter.BYTES;
+import static pl.prokodzik.altmetrik.payments.codec.CborWriter.MAP;
+import static pl.prokodzik.altmetrik.payments.codec.CborWriter.NEGATIVE;
+import static pl.prokodzik.altmetrik.payments.codec.CborWriter.NULL;
+import static pl.prokodzik.altmetrik.payments.codec.CborWriter.SIMPLE;
+import static pl.prokodzik.altmetrik.payments.codec.CborWriter.TAG;
+import static pl.prokodzik.altmetrik.payments.codec.CborWriter.TEXT;
+import static pl.prokodzik.altmetrik.payments.codec.CborWriter.UNSIGNED;
+
+/**
+ * Reads CBOR items written by clients. Besides what {@link CborWriter} produces it accepts indefinite
+ * length maps, arrays and strings, which streaming encoders emit, and skips values of any type.
+ */
+final class CborReader {
+
+    static final int INDEFINITE = -1;
+
+    private static final int BREAK = 0xff;
+    private static final int MAX_DEPTH = 16;
+
+    private final byte[] data;
+    private int position;
+
+    CborReader(final byte[] data) {
+        this.data = data;
+    }
+
+    boolean isAtEnd() {
+        return position == data.length;
+    }
+
+    boolean nextIsNull() throws InputDataException {
+        return peek() == NULL;
+    }
+
+    boolean nextIsBreak() throws InputDataException {
+        return peek() == BREAK;
+    }
+
+    void readBreak() throws InputDataException {
+        if (readByte() != BREAK) {
+            throw invalid("expected end of indefinite length item");
+        }
+    }
+
+    void readNull() throws InputDataException {
+        if (readByte() != NULL) {
+            throw invalid("expected null");
+        }
+    }
+
+    /**
+     * Number of entries of the map or {@link #INDEFINITE}, in which case entries end with a break.
+     */
+    int readMapHeader() throws InputDataException {
+        return readLength(MAP);
+    }
+
+    Long readLong() throws InputDataException {
+        if (nextIsNull()) {
+            readNull();
+            return null;
+        }
+        int major = peek() >>> 5;
+        if (major != UNSIGNED && major != NEGATIVE) {
+            throw invalid("expected integer");
+        }
+        long value = readArgument(readByte());
+        if (value < 0) {
+            throw invalid("integer out of range");
+        }
+        return major == UNSIGNED ? value : -1 - value;
+    }
+
+    String readText() throws InputDataException {
+        if (nextIsNull()) {
+            readNull();
+            return null;
+        }
+        int length = readLength(TEXT);
+        if (length != INDEFINITE) {
+            return new String(readBytes(length), StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        while (!nextIsBreak()) {
+            chunks.writeBytes(readBytes(readLength(TEXT)));
+        }
+        readBreak();
+        return chunks.toString(StandardCharsets.UTF_8);
+    }
+
+    void skip() throws InputDataException {
+        skip(0);
+    }
+
+    private void skip(final int depth) throws InputDataException {
+        if (depth > MAX_DEPTH) {
+            throw invalid("nested too deep");
+        }
+        int initial = readByte();
+        int major = initial >>> 5;
+        if (major == SIMPLE) {
+            skipBytes(simpleValueLength(initial & 0x1f));
+            return;
+        }
+        if ((initial & 0x1f) == 31) {
+            if (major == UNSIGNED || major == NEGATIVE || major == TAG) {
+                throw invalid("unexpected indefinite length");
+            }
+            while (!nextIsBreak()) {
+                skip(depth + 1);
+            }
+            readBreak();
+            return;
+        }
+        long argument = readArgument(initial);
+        if (major == BYTES || major == TEXT) {
+            skipBytes(toLength(argument));
+        } else if (major == ARRAY || major == MAP) {
+            long items = major == MAP ? argument * 2 : argument;
+            for (long item = 0; item < items; item++) {
+                skip(depth + 1);
+            }
+        } else if (major == TAG) {
+            skip(depth + 1);
+        }
+    }
+
+    private int readLength(final int expectedMajor) throws InputDataException {
+        int initial = readByte();
+        if (initial >>> 5 != expectedMajor) {
+            throw invalid(expectedMajor == MAP ? "expected map" : "expected text");
+        }
+        if ((initial & 0x1f) == 31) {
+            return INDEFINITE;
+        }
+        return toLength(readArgument(initial));
+    }
+
+    private long readArgument(final int initial) throws InputDataException {
+        int info = initial & 0x1f;
+        if (info < 24) {
+            return info;
+        }
+        if (info > 27) {
+            throw invalid("unsupported length encoding");
+        }
+        int bytes = 1 << (info - 24);
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private int simpleValueLength(final int info) throws InputDataException {
+        switch (info) {
+            case 24:
+                return 1;
+            case 25:
+                return 2;
+            case 26:
+                return 4;
+            case 27:
+                return 8;
+            default:
+                if (info > 27) {
+                    throw invalid("unexpected break");
+                }
+                return 0;
+        }
+    }
+
+    private int toLength(final long length) throws InputDataException {
+        if (length < 0 || length > data.length - position) {
+            throw invalid("length exceeds input");
+        }
+        return (int) length;
+    }
+
+    private byte[] readBytes(final int length) throws InputDataException {
+        byte[] bytes = new byte[toLength(length)];
+        System.arraycopy(data, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    private void skipBytes(final int length) throws InputDataException {
+        position += toLength(length);
+    }
+
+    private int peek() throws InputDataException {
+        if (position >= data.length) {
+            throw invalid("unexpected end of input");
+        }
+        return data[position] & 0xff;
+    }
+
+    private int readByte() throws InputDataException {
+        int next = peek();
+        position++;
+        return next;
+    }
+
+    private InputDataException invalid(final String reason) {
+        return new InputDataException("Invalid CBOR at byte " + position + ": " + reason);
+    }
+}
@@ -0,0 +1,98 @@
+package pl.prokodzik.altmetrik.payments.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes the subset of CBOR (RFC 8949) used by payments: integers, text strings, arrays, maps and null,
+ * always with definite lengths and the shortest head encoding.
+ */
+final class CborWriter {
+
+    static final int UNSIGNED = 0;
+    static final int NEGATIVE = 1;
+    static final int BYTES = 2;
+    static final int TEXT = 3;
+    static final int ARRAY = 4;
+    static final int MAP = 5;
+    static final int TAG = 6;
+    static final int SIMPLE = 7;
+    static final int NULL = 0xf6;
+
+    private byte[] buffer;
+    private int size;
+
+    CborWriter(final int expectedSize) {
+        buffer = new byte[Math.max(16, expectedSize)];
+    }
+
+    CborWriter writeArrayHeader(final int length) {
+        return writeHead(ARRAY, length);
+    }
+
+    CborWriter writeMapHeader(final int entries) {
+        return writeHead(MAP, entries);
+    }
+
+    CborWriter writeLong(final Long value) {
+        if (value == null) {
+            return writeNull();
+        }
+        return value >= 0 ? writeHead(UNSIGNED, value) : writeHead(NEGATIVE, -1 - value);
+    }
+
+    CborWriter writeText(final String value) {
+        if (value == null) {
+            return writeNull();
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeHead(TEXT, utf8.length);
+        ensureCapacity(utf8.length);
+        System.arraycopy(utf8, 0, buffer, size, utf8.length);
+        size += utf8.length;
+        return this;
+    }
+
+    CborWriter writeNull() {
+        ensureCapacity(1);
+        buffer[size++] = (byte) NULL;
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private CborWriter writeHead(final int major, final long value) {
+        ensureCapacity(9);
+        int type = major << 5;
+        if (value < 24) {
+            buffer[size++] = (byte) (type | value);
+        } else if (value <= 0xffL) {
+            buffer[size++] = (byte) (type | 24);
+            buffer[size++] = (byte) value;
+        } else if (value <= 0xffffL) {
+            buffer[size++] = (byte) (type | 25);
+            writeBigEndian(value, 2);
+        } else if (value <= 0xffffffffL) {
+            buffer[size++] = (byte) (type | 26);
+            writeBigEndian(value, 4);
+        } else {
+            buffer[size++] = (byte) (type | 27);
+            writeBigEndian(value, 8);
+        }
+        return this;
+    }
+
+    private void writeBigEndian(final long value, final int bytes) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
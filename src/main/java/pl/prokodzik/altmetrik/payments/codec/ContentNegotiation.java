@@ -0,0 +1,94 @@
+package pl.prokodzik.altmetrik.payments.codec;
+
+import spark.Request;
+import spark.Response;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static spark.Spark.halt;
+
+/**
+ * Picks the codec of a response from the {@code Accept} header and of a request body from its
+ * {@code Content-Type}. The first codec is the default, used when the client does not ask for anything else.
+ */
+public class ContentNegotiation {
+
+    private final List<PaymentCodec> codecs;
+
+    public ContentNegotiation(final PaymentCodec... codecs) {
+        this.codecs = List.of(codecs);
+    }
+
+    public PaymentCodec forResponse(final Request req, final Response resp) {
+        PaymentCodec codec = select(req.headers("Accept"));
+        if (codec == null) {
+            halt(406, "Supported types: " + supportedTypes());
+        }
+        resp.type(codec.getContentType());
+        return codec;
+    }
+
+    /**
+     * Codec of the request body. Bodies of other types are read with the default codec, as clients
+     * sending JSON often leave the content type out or set it to a form type.
+     */
+    public PaymentCodec forRequest(final Request req) {
+        String contentType = req.contentType();
+        if (contentType != null) {
+            String mediaType = QualityList.mediaType(contentType);
+            for (PaymentCodec codec : codecs) {
+                if (codec.getContentType().equalsIgnoreCase(mediaType)) {
+                    return codec;
+                }
+            }
+        }
+        return codecs.get(0);
+    }
+
+    PaymentCodec select(final String accept) {
+        if (accept == null || accept.isBlank()) {
+            return codecs.get(0);
+        }
+        List<QualityList.Entry> entries = QualityList.parse(accept);
+        Set<String> excluded = new HashSet<>();
+        for (QualityList.Entry entry : entries) {
+            if (entry.getQuality() == 0) {
+                excluded.add(entry.getValue());
+            }
+        }
+        PaymentCodec best = null;
+        double bestQuality = 0;
+        for (QualityList.Entry entry : entries) {
+            PaymentCodec codec = match(entry.getValue(), excluded);
+            if (codec != null && entry.getQuality() > bestQuality) {
+                best = codec;
+                bestQuality = entry.getQuality();
+            }
+        }
+        return best;
+    }
+
+    private PaymentCodec match(final String mediaRange, final Set<String> excluded) {
+        for (PaymentCodec codec : codecs) {
+            String contentType = codec.getContentType();
+            if (excluded.contains(contentType)) {
+                continue;
+            }
+            if (mediaRange.equals("*/*") || mediaRange.equalsIgnoreCase(contentType)
+                    || mediaRange.endsWith("/*") && contentType.regionMatches(true, 0, mediaRange, 0, mediaRange.length() - 1)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    private String supportedTypes() {
+        StringBuilder types = new StringBuilder();
+        for (PaymentCodec codec : codecs) {
+            types.append(types.length() == 0 ? "" : ", ").append(codec.getContentType());
+        }
+        return types.toString();
+    }
+}
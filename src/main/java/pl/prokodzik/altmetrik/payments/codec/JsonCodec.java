@@ -0,0 +1,39 @@
+package pl.prokodzik.altmetrik.payments.codec;
+
+import com.google.gson.Gson;
+import pl.prokodzik.altmetrik.payments.service.PaymentInput;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class JsonCodec implements PaymentCodec {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    private final Gson gson;
+
+    public JsonCodec(final Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(final StorablePayment payment) {
+        return gson.toJson(payment).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encode(final List<StorablePayment> payments) {
+        return gson.toJson(payments).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public PaymentInput decodeInput(final byte[] body) {
+        return gson.fromJson(new String(body, StandardCharsets.UTF_8), PaymentInput.class);
+    }
+}
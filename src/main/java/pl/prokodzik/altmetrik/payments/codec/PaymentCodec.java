@@ -0,0 +1,21 @@
+package pl.prokodzik.altmetrik.payments.codec;
+
+import pl.prokodzik.altmetrik.payments.exceptions.InputDataException;
+import pl.prokodzik.altmetrik.payments.service.PaymentInput;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.util.List;
+
+/**
+ * Wire format of payments exchanged over HTTP.
+ */
+public interface PaymentCodec {
+
+    String getContentType();
+
+    byte[] encode(StorablePayment payment);
+
+    byte[] encode(List<StorablePayment> payments);
+
+    PaymentInput decodeInput(byte[] body) throws InputDataException;
+}
@@ -0,0 +1,55 @@
+package pl.prokodzik.altmetrik.payments.codec;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser of header values like {@code Accept} and {@code Accept-Encoding}: comma separated values with optional
+ * {@code q} weights. Weight 0 means the value is not acceptable.
+ */
+final class QualityList {
+
+    private QualityList() {
+    }
+
+    static List<Entry> parse(final String header) {
+        List<Entry> entries = new ArrayList<>();
+        for (String element : header.split(",")) {
+            String value = mediaType(element);
+            if (value.isEmpty()) {
+                continue;
+            }
+            entries.add(new Entry(value, quality(element)));
+        }
+        return entries;
+    }
+
+    static String mediaType(final String element) {
+        int parameters = element.indexOf(';');
+        return (parameters < 0 ? element : element.substring(0, parameters)).trim().toLowerCase();
+    }
+
+    private static double quality(final String element) {
+        for (String parameter : element.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.startsWith("q=") || trimmed.startsWith("Q=")) {
+                try {
+                    return Math.min(1, Double.parseDouble(trimmed.substring(2)));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static final class Entry {
+        private final String value;
+        private final double quality;
+    }
+}
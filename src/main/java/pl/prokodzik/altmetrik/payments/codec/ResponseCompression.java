@@ -0,0 +1,101 @@
+package pl.prokodzik.altmetrik.payments.codec;
+
+import spark.Request;
+import spark.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Compresses response bodies of at least {@code threshold} bytes with the encoding preferred by the client.
+ * Compression is streamed while the body is written to the connection: gzip by the output stream Spark
+ * wraps when {@code Content-Encoding: gzip} is set, deflate by returning a {@link DeflaterInputStream}.
+ */
+public class ResponseCompression {
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private final int threshold;
+
+    public ResponseCompression(final int threshold) {
+        this.threshold = threshold;
+    }
+
+    public Object compress(final Request req, final Response resp, final byte[] body) {
+        resp.header("Vary", "Accept, Accept-Encoding");
+        String encoding = body.length < threshold ? null : select(req.headers("Accept-Encoding"));
+        if (encoding != null) {
+            resp.header("Content-Encoding", encoding);
+        }
+        return encode(encoding, body);
+    }
+
+    /**
+     * Body to return from a route for the selected encoding. Gzip bodies are returned as they are, Spark
+     * compresses them when the request lists gzip.
+     */
+    Object encode(final String encoding, final byte[] body) {
+        if (DEFLATE.equals(encoding)) {
+            return new DeflatingStream(body);
+        }
+        return body;
+    }
+
+    /**
+     * Gzip or deflate, whichever has higher weight with gzip winning ties, or null for identity. Gzip is
+     * picked only when listed by name in lower case, as Spark compresses gzip responses only for requests
+     * whose header contains "gzip", a wildcard alone selects deflate.
+     */
+    String select(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = 0;
+        double deflate = 0;
+        double any = 0;
+        boolean gzipListed = false;
+        boolean deflateListed = false;
+        for (QualityList.Entry entry : QualityList.parse(acceptEncoding)) {
+            String value = entry.getValue();
+            double quality = entry.getQuality();
+            if (GZIP.equals(value)) {
+                gzip = quality;
+                gzipListed = true;
+            } else if (DEFLATE.equals(value)) {
+                deflate = quality;
+                deflateListed = true;
+            } else if ("*".equals(value)) {
+                any = quality;
+            }
+        }
+        gzip = gzipListed && acceptEncoding.contains(GZIP) ? gzip : 0;
+        deflate = deflateListed ? deflate : any;
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * {@link DeflaterInputStream} ends only deflaters it created itself, this one ends its own on close,
+     * which Spark calls once the body is written, instead of leaving the native memory to the garbage collector.
+     */
+    private static class DeflatingStream extends DeflaterInputStream {
+
+        DeflatingStream(final byte[] body) {
+            super(new ByteArrayInputStream(body), new Deflater(Deflater.BEST_SPEED));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package pl.prokodzik.altmetrik.payments.exceptions;
+
+/**
+ * Storage failed part way through a change, thrown where a partial result would be mistaken for a complete one.
+ */
+public class StorageException extends RuntimeException {
+    public StorageException(String s, Throwable cause) {
+        super(s, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+@Getter
+@AllArgsConstructor
+public class Mutation {
+    private final long sequence;
+    private final long timestampMillis;
+    private final MutationType type;
+    private final String id;
+    private final StorablePayment payment;
+}
@@ -0,0 +1,65 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Ordered log of the most recent mutations kept in a ring buffer. Sequences start from 1 and have no gaps,
+ * the log id changes with every leader start so followers know when their sequence no longer applies.
+ */
+public class MutationLog {
+
+    private final String logId = UUID.randomUUID().toString();
+    private final Mutation[] ring;
+    private long lastSequence;
+
+    public MutationLog(final int retention) {
+        ring = new Mutation[retention];
+    }
+
+    public synchronized Mutation append(final MutationType type, final String id, final StorablePayment payment) {
+        Mutation mutation = new Mutation(++lastSequence, System.currentTimeMillis(), type, id, payment);
+        ring[slot(mutation.getSequence())] = mutation;
+        notifyAll();
+        return mutation;
+    }
+
+    public String getLogId() {
+        return logId;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized boolean canServeAfter(final long sequence) {
+        return sequence >= 0 && sequence <= lastSequence && sequence >= lastSequence - ring.length;
+    }
+
+    /**
+     * Returns mutations following given sequence, waiting up to given time when there are none yet.
+     * Empty optional means the mutations were already overwritten and the reader needs a snapshot.
+     */
+    public synchronized Optional<List<Mutation>> awaitAfter(final long sequence, final int maxMutations, final long timeoutMillis) throws InterruptedException {
+        if (sequence == lastSequence) {
+            wait(timeoutMillis);
+        }
+        if (!canServeAfter(sequence)) {
+            return Optional.empty();
+        }
+        long last = Math.min(lastSequence, sequence + maxMutations);
+        List<Mutation> mutations = new ArrayList<>((int) (last - sequence));
+        for (long next = sequence + 1; next <= last; next++) {
+            mutations.add(ring[slot(next)]);
+        }
+        return Optional.of(mutations);
+    }
+
+    private int slot(final long sequence) {
+        return (int) (sequence % ring.length);
+    }
+}
@@ -0,0 +1,5 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+public enum MutationType {
+    SAVE, UPDATE, DELETE
+}
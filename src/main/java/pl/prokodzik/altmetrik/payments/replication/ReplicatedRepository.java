@@ -0,0 +1,80 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.storage.ForwardingRepository;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Leader side repository: every successful write is appended to the mutation log in the same order
+ * it was applied to the underlying repository.
+ */
+public class ReplicatedRepository extends ForwardingRepository {
+
+    private final MutationLog mutationLog;
+
+    public ReplicatedRepository(final Repository<StorablePayment, String> repository, final MutationLog log) {
+        super(repository);
+        mutationLog = log;
+    }
+
+    @Override
+    public synchronized StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+        StorablePayment saved = delegate.save(storablePayment);
+        if (saved != null) {
+            mutationLog.append(MutationType.SAVE, saved.getId(), saved);
+        }
+        return saved;
+    }
+
+    @Override
+    public synchronized StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        StorablePayment updated = delegate.update(storablePayment);
+        if (updated != null) {
+            mutationLog.append(MutationType.UPDATE, updated.getId(), updated);
+        }
+        return updated;
+    }
+
+    @Override
+    public synchronized void delete(final String id) throws PaymentNotFoundException {
+        delegate.delete(id);
+        mutationLog.append(MutationType.DELETE, id, null);
+    }
+
+    @Override
+    public synchronized List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        List<StorablePayment> updated = delegate.updateWhere(filter, change);
+        updated.forEach(payment -> mutationLog.append(MutationType.UPDATE, payment.getId(), payment));
+        return updated;
+    }
+
+    @Override
+    public synchronized List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        List<String> deleted = delegate.deleteWhere(filter);
+        deleted.forEach(id -> mutationLog.append(MutationType.DELETE, id, null));
+        return deleted;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(mutationLog.getLastSequence(), delegate.getAll());
+    }
+
+    public MutationLog getMutationLog() {
+        return mutationLog;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+        private final long sequence;
+        private final List<StorablePayment> payments;
+    }
+}
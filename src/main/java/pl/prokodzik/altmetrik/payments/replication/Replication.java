@@ -0,0 +1,65 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Creates the replication node configured with {@code payments.replication.*} system properties.
+ */
+public final class Replication {
+
+    private Replication() {
+    }
+
+    public static ReplicationNode fromSystemProperties(final Repository<StorablePayment, String> repository) throws IOException {
+        String role = System.getProperty("payments.replication.role", "none");
+        long heartbeatMillis = Long.getLong("payments.replication.heartbeatMs", 1000);
+        switch (role) {
+            case "leader":
+                return new ReplicationLeader(repository, Integer.getInteger("payments.replication.port", 9090),
+                        Integer.getInteger("payments.replication.logRetention", 100_000), heartbeatMillis);
+            case "follower": {
+                String leader = System.getProperty("payments.replication.leader", "localhost:9090");
+                int separator = leader.lastIndexOf(':');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Leader address has to be host:port, got " + leader);
+                }
+                return new ReplicationFollower(repository, leader.substring(0, separator), Integer.parseInt(leader.substring(separator + 1)), heartbeatMillis);
+            }
+            case "none":
+                return standalone(repository);
+            default:
+                throw new IllegalArgumentException("Unknown replication role " + role);
+        }
+    }
+
+    private static ReplicationNode standalone(final Repository<StorablePayment, String> repository) {
+        return new ReplicationNode() {
+            @Override
+            public Repository<StorablePayment, String> getRepository() {
+                return repository;
+            }
+
+            @Override
+            public boolean isReadOnly() {
+                return false;
+            }
+
+            @Override
+            public Map<String, Object> getStatus() {
+                return Map.of("role", "none");
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (repository instanceof Closeable) {
+                    ((Closeable) repository).close();
+                }
+            }
+        };
+    }
+}
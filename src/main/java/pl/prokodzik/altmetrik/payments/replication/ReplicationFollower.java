@@ -0,0 +1,226 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps a local repository in sync with the leader. Mutations are applied as upserts, so replaying
+ * a mutation after a reconnect is harmless. Serves reads only, writes have to go to the leader.
+ */
+public class ReplicationFollower implements ReplicationNode {
+
+    private static final String NO_LOG = "";
+
+    private final Repository<StorablePayment, String> repository;
+    private final ReplicationProtocol protocol = new ReplicationProtocol(new BinaryMapper());
+    private final String leaderHost;
+    private final int leaderPort;
+    private final long heartbeatMillis;
+    private final Logger logger = LoggerFactory.getLogger(ReplicationFollower.class);
+    private final Thread replicator;
+
+    private volatile boolean running = true;
+    private volatile boolean connected;
+    private volatile Socket socket;
+    private volatile String logId = NO_LOG;
+    private volatile long appliedSequence;
+    private volatile long leaderSequence;
+    private volatile long caughtUpAtMillis = System.currentTimeMillis();
+    private volatile long snapshotsLoaded;
+
+    public ReplicationFollower(final Repository<StorablePayment, String> repository, final String leaderHost, final int leaderPort, final long heartbeatMillis) {
+        this.repository = repository;
+        this.leaderHost = leaderHost;
+        this.leaderPort = leaderPort;
+        this.heartbeatMillis = heartbeatMillis;
+        replicator = new Thread(this::replicate, "replication-follower");
+        replicator.setDaemon(true);
+        replicator.start();
+    }
+
+    @Override
+    public Repository<StorablePayment, String> getRepository() {
+        return repository;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    @Override
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "follower");
+        status.put("leader", leaderHost + ":" + leaderPort);
+        status.put("connected", connected);
+        status.put("logId", logId);
+        status.put("appliedSequence", appliedSequence);
+        status.put("leaderSequence", leaderSequence);
+        status.put("lagEntries", Math.max(0, leaderSequence - appliedSequence));
+        status.put("lagMillis", appliedSequence >= leaderSequence ? 0 : System.currentTimeMillis() - caughtUpAtMillis);
+        status.put("snapshotsLoaded", snapshotsLoaded);
+        return status;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        replicator.interrupt();
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+        if (repository instanceof Closeable) {
+            ((Closeable) repository).close();
+        }
+    }
+
+    private void replicate() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(leaderHost, leaderPort), (int) heartbeatMillis * 3);
+                connection.setSoTimeout((int) heartbeatMillis * 3);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                protocol.writeHello(out, logId, appliedSequence);
+                connected = true;
+                logger.info("Connected to leader {}:{} at sequence {}", leaderHost, leaderPort, appliedSequence);
+                while (running) {
+                    readFrame(in);
+                }
+            } catch (IOException | DataCorruptionException e) {
+                if (running) {
+                    logger.warn("Replication from {}:{} interrupted: {}", leaderHost, leaderPort, e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                logger.error("Applying replicated changes failed, reloading a snapshot from {}:{}", leaderHost, leaderPort, e);
+                logId = NO_LOG;
+            } finally {
+                connected = false;
+            }
+            pause();
+        }
+    }
+
+    private void readFrame(final DataInputStream in) throws IOException, DataCorruptionException {
+        byte frame = in.readByte();
+        switch (frame) {
+            case ReplicationProtocol.SNAPSHOT:
+                loadSnapshot(in);
+                break;
+            case ReplicationProtocol.MUTATION:
+                Mutation mutation = protocol.readMutation(in);
+                apply(mutation);
+                appliedSequence = mutation.getSequence();
+                leaderSequence = Math.max(leaderSequence, appliedSequence);
+                markIfCaughtUp();
+                break;
+            case ReplicationProtocol.HEARTBEAT:
+                leaderSequence = in.readLong();
+                in.readLong();
+                markIfCaughtUp();
+                break;
+            default:
+                throw new IOException("Unknown replication frame " + frame);
+        }
+    }
+
+    /**
+     * Applies the snapshot with one bulk update of payments stored already and one bulk delete of the rest,
+     * only payments new to this node are saved one by one.
+     */
+    private void loadSnapshot(final DataInputStream in) throws IOException, DataCorruptionException {
+        String snapshotLogId = in.readUTF();
+        long sequence = in.readLong();
+        int count = in.readInt();
+        Map<String, StorablePayment> snapshot = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            StorablePayment payment = protocol.readPayment(in);
+            snapshot.put(payment.getId(), payment);
+        }
+        Set<String> present = new HashSet<>(count * 2);
+        repository.updateWhere(local -> snapshot.containsKey(local.getId()), local -> snapshot.get(local.getId()))
+                .forEach(payment -> present.add(payment.getId()));
+        repository.deleteWhere(local -> !snapshot.containsKey(local.getId()));
+        for (StorablePayment payment : snapshot.values()) {
+            if (!present.contains(payment.getId())) {
+                upsert(payment);
+            }
+        }
+        logId = snapshotLogId;
+        appliedSequence = sequence;
+        leaderSequence = Math.max(leaderSequence, sequence);
+        snapshotsLoaded++;
+        markIfCaughtUp();
+        logger.info("Loaded snapshot of {} payments at sequence {}", count, sequence);
+    }
+
+    private void apply(final Mutation mutation) {
+        if (mutation.getType() == MutationType.DELETE) {
+            remove(mutation.getId());
+        } else {
+            upsert(mutation.getPayment());
+        }
+    }
+
+    private void upsert(final StorablePayment payment) {
+        try {
+            if (repository.getById(payment.getId()).isPresent()) {
+                repository.update(payment);
+            } else {
+                repository.save(payment);
+            }
+        } catch (PaymentNotFoundException | PaymentAlreadyExistsException e) {
+            logger.error("Applying payment {} failed", payment.getId(), e);
+        }
+    }
+
+    private void remove(final String id) {
+        try {
+            if (repository.getById(id).isPresent()) {
+                repository.delete(id);
+            }
+        } catch (PaymentNotFoundException e) {
+            logger.error("Deleting payment {} failed", id, e);
+        }
+    }
+
+    private void markIfCaughtUp() {
+        if (appliedSequence >= leaderSequence) {
+            caughtUpAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(heartbeatMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
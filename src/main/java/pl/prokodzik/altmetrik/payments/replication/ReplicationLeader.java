@@ -0,0 +1,146 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Accepts follower connections and ships them the mutation log. A follower which is too far behind
+ * (or was following a previous leader run) gets a full snapshot first and continues from its sequence.
+ */
+public class ReplicationLeader implements ReplicationNode {
+
+    private static final int BATCH_SIZE = 256;
+
+    private final ReplicatedRepository repository;
+    private final ReplicationProtocol protocol = new ReplicationProtocol(new BinaryMapper());
+    private final ServerSocket serverSocket;
+    private final long heartbeatMillis;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final Logger logger = LoggerFactory.getLogger(ReplicationLeader.class);
+    private volatile boolean running = true;
+
+    public ReplicationLeader(final Repository<StorablePayment, String> repository, final int port, final int logRetention, final long heartbeatMillis) throws IOException {
+        this.repository = new ReplicatedRepository(repository, new MutationLog(logRetention));
+        this.heartbeatMillis = heartbeatMillis;
+        serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::acceptFollowers, "replication-leader");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public Repository<StorablePayment, String> getRepository() {
+        return repository;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "leader");
+        status.put("logId", repository.getMutationLog().getLogId());
+        status.put("lastSequence", repository.getMutationLog().getLastSequence());
+        status.put("followers", followers.size());
+        return status;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket follower : followers) {
+            follower.close();
+        }
+        repository.close();
+    }
+
+    private void acceptFollowers() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                followers.add(socket);
+                Thread shipper = new Thread(() -> ship(socket), "replication-ship-" + socket.getRemoteSocketAddress());
+                shipper.setDaemon(true);
+                shipper.start();
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Accepting follower failed", e);
+                }
+            }
+        }
+    }
+
+    private void ship(final Socket socket) {
+        MutationLog mutationLog = repository.getMutationLog();
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            String followerLogId = in.readUTF();
+            long sequence = in.readLong();
+            if (!mutationLog.getLogId().equals(followerLogId) || !mutationLog.canServeAfter(sequence)) {
+                sequence = sendSnapshot(out);
+            }
+            logger.info("Follower {} replicating from sequence {}", socket.getRemoteSocketAddress(), sequence);
+            while (running) {
+                Optional<List<Mutation>> mutations = mutationLog.awaitAfter(sequence, BATCH_SIZE, heartbeatMillis);
+                if (mutations.isEmpty()) {
+                    sequence = sendSnapshot(out);
+                    continue;
+                }
+                if (mutations.get().isEmpty()) {
+                    protocol.writeHeartbeat(out, sequence);
+                }
+                for (Mutation mutation : mutations.get()) {
+                    protocol.writeMutation(out, mutation);
+                    sequence = mutation.getSequence();
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (running) {
+                logger.warn("Follower {} disconnected: {}", socket.getRemoteSocketAddress(), e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    private long sendSnapshot(final DataOutputStream out) throws IOException, InterruptedException {
+        while (!repository.isFullyLoaded()) {
+            protocol.writeHeartbeat(out, repository.getMutationLog().getLastSequence());
+            out.flush();
+            Thread.sleep(heartbeatMillis);
+        }
+        ReplicatedRepository.Snapshot snapshot = repository.snapshot();
+        protocol.writeSnapshot(out, repository.getMutationLog().getLogId(), snapshot);
+        out.flush();
+        return snapshot.getSequence();
+    }
+}
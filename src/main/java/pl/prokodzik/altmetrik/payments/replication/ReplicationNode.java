@@ -0,0 +1,16 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.Closeable;
+import java.util.Map;
+
+public interface ReplicationNode extends Closeable {
+
+    Repository<StorablePayment, String> getRepository();
+
+    boolean isReadOnly();
+
+    Map<String, Object> getStatus();
+}
@@ -0,0 +1,78 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Frames exchanged between leader and follower. Follower opens the connection with its log id and last
+ * applied sequence, from then on leader only sends: a snapshot, mutations following the snapshot or the
+ * follower's sequence, and heartbeats when there is nothing to send.
+ */
+final class ReplicationProtocol {
+
+    static final byte SNAPSHOT = 1;
+    static final byte MUTATION = 2;
+    static final byte HEARTBEAT = 3;
+
+    private final BinaryMapper binaryMapper;
+
+    ReplicationProtocol(final BinaryMapper mapper) {
+        binaryMapper = mapper;
+    }
+
+    void writeHello(final DataOutputStream out, final String logId, final long appliedSequence) throws IOException {
+        out.writeUTF(logId);
+        out.writeLong(appliedSequence);
+        out.flush();
+    }
+
+    void writeSnapshot(final DataOutputStream out, final String logId, final ReplicatedRepository.Snapshot snapshot) throws IOException {
+        out.writeByte(SNAPSHOT);
+        out.writeUTF(logId);
+        out.writeLong(snapshot.getSequence());
+        out.writeInt(snapshot.getPayments().size());
+        for (StorablePayment payment : snapshot.getPayments()) {
+            binaryMapper.write(out, payment);
+        }
+    }
+
+    void writeMutation(final DataOutputStream out, final Mutation mutation) throws IOException {
+        out.writeByte(MUTATION);
+        out.writeLong(mutation.getSequence());
+        out.writeLong(mutation.getTimestampMillis());
+        out.writeByte(mutation.getType().ordinal());
+        out.writeUTF(mutation.getId());
+        out.writeBoolean(mutation.getPayment() != null);
+        if (mutation.getPayment() != null) {
+            binaryMapper.write(out, mutation.getPayment());
+        }
+    }
+
+    void writeHeartbeat(final DataOutputStream out, final long lastSequence) throws IOException {
+        out.writeByte(HEARTBEAT);
+        out.writeLong(lastSequence);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    Mutation readMutation(final DataInputStream in) throws IOException, DataCorruptionException {
+        long sequence = in.readLong();
+        long timestamp = in.readLong();
+        byte ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= MutationType.values().length) {
+            throw new DataCorruptionException("Unknown mutation type " + ordinal);
+        }
+        MutationType type = MutationType.values()[ordinal];
+        String id = in.readUTF();
+        StorablePayment payment = in.readBoolean() ? binaryMapper.read(in) : null;
+        return new Mutation(sequence, timestamp, type, id, payment);
+    }
+
+    StorablePayment readPayment(final DataInputStream in) throws IOException, DataCorruptionException {
+        return binaryMapper.read(in);
+    }
+}
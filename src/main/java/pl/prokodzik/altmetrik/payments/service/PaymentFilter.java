@@ -0,0 +1,26 @@
+package pl.prokodzik.altmetrik.payments.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+/**
+ * Selects payments for bulk operations. Only set criteria are checked, all of them have to match.
+ */
+@Getter
+@AllArgsConstructor
+public class PaymentFilter {
+    private String userId;
+    private String accountNumber;
+    private String currency;
+
+    public boolean isEmpty() {
+        return userId == null && accountNumber == null && currency == null;
+    }
+
+    public boolean matches(final StorablePayment payment) {
+        return (userId == null || userId.equals(payment.getUserId()))
+                && (accountNumber == null || accountNumber.equals(payment.getAccountNumber()))
+                && (currency == null || payment.getCurrency() != null && currency.equals(payment.getCurrency().getCurrencyCode()));
+    }
+}
@@ -13,9 +13,35 @@ public interface PaymentsService<I extends PaymentInput, S extends StorablePayme
 
     List<S> getAll();
 
+    List<S> getPage(final K afterId, final int limit) throws InputDataException;
+
+    /**
+     * Payments created in {@code [from, to)} epoch millis, oldest first.
+     */
+    List<S> getCreatedBetween(final long from, final long to) throws InputDataException;
+
+    /**
+     * Payments with amount in {@code [minAmount, maxAmount]} ordered by amount, at most {@code limit} of them.
+     *
+     * @param currency currency code, all currencies when null
+     */
+    List<S> getSortedByAmount(final String currency, final long minAmount, final long maxAmount, final boolean descending, final int limit) throws InputDataException;
+
     S save(final I paymentInput) throws PaymentAlreadyExistsException;
 
     S update(final I paymentInput, final K id) throws InputDataException, PaymentNotFoundException;
 
     void delete(final K id) throws PaymentNotFoundException;
+
+    /**
+     * Applies non-null fields of {@code paymentInput} to every payment matching {@code filter}.
+     *
+     * @return number of updated payments
+     */
+    int updateWhere(final PaymentFilter filter, final I paymentInput) throws InputDataException;
+
+    /**
+     * @return number of deleted payments
+     */
+    int deleteWhere(final PaymentFilter filter) throws InputDataException;
 }
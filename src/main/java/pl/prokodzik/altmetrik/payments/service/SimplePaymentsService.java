@@ -5,7 +5,10 @@ import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
 import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
 import pl.prokodzik.altmetrik.payments.storage.Repository;
 import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+import pl.prokodzik.altmetrik.payments.tracing.Trace;
+import pl.prokodzik.altmetrik.payments.tracing.Tracing;
 
+import java.time.Clock;
 import java.util.Currency;
 import java.util.List;
 import java.util.Optional;
@@ -13,29 +16,77 @@ import java.util.Optional;
 public class SimplePaymentsService implements PaymentsService<PaymentInput, StorablePayment, String> {
 
     private final Repository<StorablePayment, String> repository;
+    private final Clock clock;
 
     public SimplePaymentsService(final Repository<StorablePayment, String> repository) {
+        this(repository, Clock.systemUTC());
+    }
+
+    public SimplePaymentsService(final Repository<StorablePayment, String> repository, final Clock clock) {
         this.repository = repository;
+        this.clock = clock;
     }
 
     @Override
     public StorablePayment getById(final String id) throws PaymentNotFoundException {
-        return repository.getById(id).orElseThrow(() -> new PaymentNotFoundException("Payment not found"));
+        try (Trace span = Tracing.span("service.getById")) {
+            return repository.getById(id).orElseThrow(() -> new PaymentNotFoundException("Payment not found"));
+        }
     }
 
     @Override
     public List<StorablePayment> getAll() {
-        return repository.getAll();
+        try (Trace span = Tracing.span("service.getAll")) {
+            return repository.getAll();
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getPage(final String afterId, final int limit) throws InputDataException {
+        if (limit <= 0) {
+            throw new InputDataException("Page limit has to be positive");
+        }
+        try (Trace span = Tracing.span("service.getPage")) {
+            return repository.getPage(afterId, limit);
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getCreatedBetween(final long from, final long to) throws InputDataException {
+        if (from > to) {
+            throw new InputDataException("Start of time range has to be before its end");
+        }
+        try (Trace span = Tracing.span("service.getCreatedBetween")) {
+            return repository.getCreatedBetween(from, to);
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getSortedByAmount(final String currency, final long minAmount, final long maxAmount,
+                                                   final boolean descending, final int limit) throws InputDataException {
+        if (limit <= 0) {
+            throw new InputDataException("Limit has to be positive");
+        }
+        if (minAmount > maxAmount) {
+            throw new InputDataException("Minimum amount has to be at most the maximum amount");
+        }
+        Currency byCurrency = currency(currency);
+        try (Trace span = Tracing.span("service.getSortedByAmount")) {
+            return repository.getSortedByAmount(byCurrency, minAmount, maxAmount, descending, limit);
+        }
     }
 
     @Override
     public StorablePayment save(final PaymentInput paymentInput) throws PaymentAlreadyExistsException {
-        StorablePayment storablePayment = StorablePayment.builder()
-                .userId(paymentInput.getUserId())
-                .currency(Currency.getInstance(paymentInput.getCurrency()))
-                .accountNumber(paymentInput.getAccountNumber())
-                .amount(paymentInput.getAmount()).build();
-        return repository.save(storablePayment);
+        try (Trace span = Tracing.span("service.save")) {
+            StorablePayment storablePayment = StorablePayment.builder()
+                    .userId(paymentInput.getUserId())
+                    .currency(Currency.getInstance(paymentInput.getCurrency()))
+                    .accountNumber(paymentInput.getAccountNumber())
+                    .amount(paymentInput.getAmount())
+                    .createdAt(clock.millis()).build();
+            return repository.save(storablePayment);
+        }
     }
 
     @Override
@@ -43,7 +94,12 @@ public class SimplePaymentsService implements PaymentsService<PaymentInput, Stor
         if (id == null || id.isEmpty()) {
             throw new InputDataException("Update process exception: Id not provided");
         }
-        Optional<StorablePayment> entityForUpdateOptional = repository.getById(id);
+        try (Trace span = Tracing.span("service.update")) {
+            return update(paymentInput, id, repository.getById(id));
+        }
+    }
+
+    private StorablePayment update(final PaymentInput paymentInput, final String id, final Optional<StorablePayment> entityForUpdateOptional) throws PaymentNotFoundException {
         if (entityForUpdateOptional.isEmpty()) {
             throw new PaymentNotFoundException("Update process exception: No payment for given id: " + id);
         }
@@ -54,14 +110,57 @@ public class SimplePaymentsService implements PaymentsService<PaymentInput, Stor
                 .userId(Optional.ofNullable(paymentInput.getUserId()).orElse(toBeUpdated.getUserId()))
                 .currency(Optional.ofNullable(paymentInput.getCurrency()).map(Currency::getInstance).orElse(toBeUpdated.getCurrency()))
                 .accountNumber(Optional.ofNullable(paymentInput.getAccountNumber()).orElse(toBeUpdated.getAccountNumber()))
-                .amount(Optional.ofNullable(paymentInput.getAmount()).orElse(toBeUpdated.getAmount())).build();
+                .amount(Optional.ofNullable(paymentInput.getAmount()).orElse(toBeUpdated.getAmount()))
+                .createdAt(toBeUpdated.getCreatedAt()).build();
 
         return repository.update(storablePayment);
     }
 
     @Override
     public void delete(final String id) throws PaymentNotFoundException {
-        repository.delete(id);
+        try (Trace span = Tracing.span("service.delete")) {
+            repository.delete(id);
+        }
+    }
+
+    @Override
+    public int updateWhere(final PaymentFilter filter, final PaymentInput paymentInput) throws InputDataException {
+        requireCriteria(filter);
+        Currency newCurrency = currency(paymentInput.getCurrency());
+        try (Trace span = Tracing.span("service.updateWhere")) {
+            return repository.updateWhere(filter::matches, toBeUpdated -> StorablePayment.builder()
+                    .id(toBeUpdated.getId())
+                    .userId(Optional.ofNullable(paymentInput.getUserId()).orElse(toBeUpdated.getUserId()))
+                    .currency(Optional.ofNullable(newCurrency).orElse(toBeUpdated.getCurrency()))
+                    .accountNumber(Optional.ofNullable(paymentInput.getAccountNumber()).orElse(toBeUpdated.getAccountNumber()))
+                    .amount(Optional.ofNullable(paymentInput.getAmount()).orElse(toBeUpdated.getAmount()))
+                    .createdAt(toBeUpdated.getCreatedAt()).build()).size();
+        }
+    }
+
+    @Override
+    public int deleteWhere(final PaymentFilter filter) throws InputDataException {
+        requireCriteria(filter);
+        try (Trace span = Tracing.span("service.deleteWhere")) {
+            return repository.deleteWhere(filter::matches).size();
+        }
+    }
+
+    private Currency currency(final String currencyCode) throws InputDataException {
+        if (currencyCode == null) {
+            return null;
+        }
+        try {
+            return Currency.getInstance(currencyCode);
+        } catch (IllegalArgumentException e) {
+            throw new InputDataException("Unknown currency: " + currencyCode);
+        }
+    }
+
+    private void requireCriteria(final PaymentFilter filter) throws InputDataException {
+        if (filter == null || filter.isEmpty()) {
+            throw new InputDataException("Bulk operation requires at least one of userId, accountNumber, currency");
+        }
     }
 
 }
@@ -0,0 +1,244 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Serves a disk repository from memory without making startup wait for the data. Payments are copied into
+ * memory by a background thread, one by one as a {@link Warmable} repository reads them, while requests are
+ * already handled: lookups of payments not loaded yet read the disk, writes go to the disk and to a pending
+ * overlay which takes precedence over loaded rows and is merged into memory once loading finishes. Until then
+ * listings contain only the payments loaded so far.
+ */
+public class BackgroundLoadingRepository extends ForwardingRepository {
+
+    private static final StorablePayment TOMBSTONE = StorablePayment.builder().build();
+
+    private enum State {LOADING, LOADED, DISK_ONLY}
+
+    private final SnapshotRepository memory;
+    private final Map<String, StorablePayment> pending = new ConcurrentHashMap<>();
+    private final AtomicLong loadedPayments = new AtomicLong();
+    private final AtomicLong diskReads = new AtomicLong();
+    private final Logger logger = LoggerFactory.getLogger(BackgroundLoadingRepository.class);
+    private volatile State state = State.LOADING;
+    private volatile long loadMillis;
+
+    public BackgroundLoadingRepository(final Repository<StorablePayment, String> diskRepository) {
+        super(diskRepository);
+        memory = new SnapshotRepository(diskRepository::supplyUniqueId);
+    }
+
+    public BackgroundLoadingRepository start() {
+        Thread loader = new Thread(this::load, "payments-loader");
+        loader.setDaemon(true);
+        loader.start();
+        return this;
+    }
+
+    @Override
+    public synchronized StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+        StorablePayment saved = delegate.save(storablePayment);
+        if (saved != null) {
+            written(saved.getId(), saved);
+        }
+        return saved;
+    }
+
+    @Override
+    public synchronized StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        StorablePayment updated = delegate.update(storablePayment);
+        if (updated != null) {
+            written(updated.getId(), updated);
+        }
+        return updated;
+    }
+
+    @Override
+    public synchronized void delete(final String id) throws PaymentNotFoundException {
+        delegate.delete(id);
+        written(id, TOMBSTONE);
+    }
+
+    /**
+     * Bulk changes go to the disk repository, which sees all payments even while loading, and their results
+     * are applied like single writes.
+     */
+    @Override
+    public synchronized List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        List<StorablePayment> updated = delegate.updateWhere(filter, change);
+        updated.forEach(payment -> written(payment.getId(), payment));
+        return updated;
+    }
+
+    @Override
+    public synchronized List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        List<String> deleted = delegate.deleteWhere(filter);
+        deleted.forEach(id -> written(id, TOMBSTONE));
+        return deleted;
+    }
+
+    @Override
+    public Optional<StorablePayment> getById(final String id) {
+        switch (state) {
+            case LOADED:
+                return memory.getById(id);
+            case DISK_ONLY:
+                return delegate.getById(id);
+            case LOADING:
+            default:
+                StorablePayment written = pending.get(id);
+                if (written != null) {
+                    return written == TOMBSTONE ? Optional.empty() : Optional.of(written);
+                }
+                Optional<StorablePayment> loaded = memory.getById(id);
+                if (loaded.isPresent()) {
+                    return loaded;
+                }
+                diskReads.incrementAndGet();
+                return delegate.getById(id);
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getAll() {
+        switch (state) {
+            case LOADED:
+                return memory.getAll();
+            case DISK_ONLY:
+                return delegate.getAll();
+            case LOADING:
+            default:
+                Map<String, StorablePayment> partial = new LinkedHashMap<>();
+                memory.snapshot().forEach(payment -> partial.put(payment.getId(), payment));
+                pending.forEach((id, payment) -> {
+                    if (payment == TOMBSTONE) {
+                        partial.remove(id);
+                    } else {
+                        partial.put(id, payment);
+                    }
+                });
+                return new ArrayList<>(partial.values());
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getPage(final String afterId, final int limit) {
+        switch (state) {
+            case LOADED:
+                return memory.getPage(afterId, limit);
+            case DISK_ONLY:
+                return delegate.getPage(afterId, limit);
+            case LOADING:
+            default:
+                return getAll().stream()
+                        .sorted(Comparator.comparing(StorablePayment::getId))
+                        .filter(payment -> afterId == null || payment.getId().compareTo(afterId) > 0)
+                        .limit(limit)
+                        .collect(toList());
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getCreatedBetween(final long from, final long to) {
+        switch (state) {
+            case LOADED:
+                return memory.getCreatedBetween(from, to);
+            case DISK_ONLY:
+                return delegate.getCreatedBetween(from, to);
+            case LOADING:
+            default:
+                return getAll().stream()
+                        .filter(payment -> payment.getCreatedAt() != null && payment.getCreatedAt() >= from && payment.getCreatedAt() < to)
+                        .sorted(Comparator.comparing(StorablePayment::getCreatedAt))
+                        .collect(toList());
+        }
+    }
+
+    @Override
+    public boolean isFullyLoaded() {
+        return state != State.LOADING;
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>(delegate.getMetrics());
+        metrics.put("loadState", state.name());
+        metrics.put("loadedPayments", loadedPayments.get());
+        metrics.put("pendingWrites", pending.size());
+        metrics.put("loadingDiskReads", diskReads.get());
+        metrics.put("loadMillis", loadMillis);
+        return metrics;
+    }
+
+    private void written(final String id, final StorablePayment payment) {
+        if (state == State.LOADING) {
+            pending.put(id, payment);
+        } else if (state == State.LOADED) {
+            apply(id, payment);
+        }
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        try {
+            if (delegate instanceof Warmable) {
+                ((Warmable) delegate).warmUp(this::loaded);
+            } else {
+                delegate.getAll().forEach(this::loaded);
+            }
+            synchronized (this) {
+                pending.forEach(this::apply);
+                state = State.LOADED;
+                pending.clear();
+            }
+            loadMillis = System.currentTimeMillis() - start;
+            logger.info("Loaded {} payments in {} ms", loadedPayments.get(), loadMillis);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Loading payments failed, serving them from disk", e);
+            synchronized (this) {
+                state = State.DISK_ONLY;
+                pending.clear();
+            }
+        }
+    }
+
+    private void loaded(final StorablePayment payment) {
+        if (!pending.containsKey(payment.getId())) {
+            apply(payment.getId(), payment);
+        }
+        loadedPayments.incrementAndGet();
+    }
+
+    private void apply(final String id, final StorablePayment payment) {
+        try {
+            if (payment == TOMBSTONE) {
+                if (memory.getById(id).isPresent()) {
+                    memory.delete(id);
+                }
+            } else if (memory.getById(id).isPresent()) {
+                memory.update(payment);
+            } else {
+                memory.save(payment);
+            }
+        } catch (PaymentNotFoundException | PaymentAlreadyExistsException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
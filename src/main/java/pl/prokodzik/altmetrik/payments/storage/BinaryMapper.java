@@ -0,0 +1,84 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Currency;
+
+public class BinaryMapper {
+
+    private static final byte VERSION_WITHOUT_CREATED_AT = 1;
+    private static final byte VERSION = 2;
+
+    public byte[] toBytes(StorablePayment storablePayment) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            write(new DataOutputStream(bytes), storablePayment);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public StorablePayment fromBytes(byte[] bytes) throws DataCorruptionException {
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new DataCorruptionException("Binary record corrupted: " + e.getLocalizedMessage());
+        }
+    }
+
+    public void write(DataOutput out, StorablePayment storablePayment) throws IOException {
+        out.writeByte(VERSION);
+        writeNullableString(out, storablePayment.getId());
+        out.writeBoolean(storablePayment.getAmount() != null);
+        if (storablePayment.getAmount() != null) {
+            out.writeLong(storablePayment.getAmount());
+        }
+        writeNullableString(out, storablePayment.getCurrency() == null ? null : storablePayment.getCurrency().getCurrencyCode());
+        writeNullableString(out, storablePayment.getUserId());
+        writeNullableString(out, storablePayment.getAccountNumber());
+        out.writeBoolean(storablePayment.getCreatedAt() != null);
+        if (storablePayment.getCreatedAt() != null) {
+            out.writeLong(storablePayment.getCreatedAt());
+        }
+    }
+
+    public StorablePayment read(DataInput in) throws IOException, DataCorruptionException {
+        byte version = in.readByte();
+        if (version != VERSION && version != VERSION_WITHOUT_CREATED_AT) {
+            throw new DataCorruptionException("Unknown binary record version: " + version);
+        }
+        String id = readNullableString(in);
+        Long amount = in.readBoolean() ? in.readLong() : null;
+        String currency = readNullableString(in);
+        String userId = readNullableString(in);
+        String accountNumber = readNullableString(in);
+        Long createdAt = version != VERSION_WITHOUT_CREATED_AT && in.readBoolean() ? in.readLong() : null;
+        return StorablePayment.builder()
+                .id(id)
+                .amount(amount)
+                .currency(currency == null ? null : Currency.getInstance(currency))
+                .userId(userId)
+                .accountNumber(accountNumber)
+                .createdAt(createdAt).build();
+    }
+
+    private void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -2,18 +2,31 @@ package pl.prokodzik.altmetrik.payments.storage;
 
 import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Currency;
+import java.util.zip.CRC32;
 
+/**
+ * Rows hold id, amount, currency, user id, account number and, for payments which have it, creation time,
+ * followed by a checksum of the other fields. Rows of older versions may miss the checksum.
+ */
 public class CsvMapper {
 
+    private static final int FIELDS = 5;
+    private static final int FIELDS_WITH_CREATED_AT = FIELDS + 1;
+    private static final String FIELD_SEPARATOR = "\u001f";
+
     public String[] toCsv(StorablePayment storablePayment) {
-        String[] strings = new String[5];
+        String[] strings = new String[storablePayment.getCreatedAt() == null ? FIELDS : FIELDS_WITH_CREATED_AT];
         strings[0] = storablePayment.getId();
         strings[1] = storablePayment.getAmount().toString();
         strings[2] = storablePayment.getCurrency().getCurrencyCode();
         strings[3] = storablePayment.getUserId();
         strings[4] = storablePayment.getAccountNumber();
+        if (storablePayment.getCreatedAt() != null) {
+            strings[5] = storablePayment.getCreatedAt().toString();
+        }
         return strings;
     }
 
@@ -23,12 +36,69 @@ public class CsvMapper {
                 .amount(Long.valueOf(csvRecord[1]))
                 .currency(Currency.getInstance(csvRecord[2]))
                 .userId(csvRecord[3])
-                .accountNumber(csvRecord[4]).build();
+                .accountNumber(csvRecord[4])
+                .createdAt(csvRecord.length > FIELDS ? Long.valueOf(csvRecord[FIELDS]) : null).build();
+    }
+
+    public String[] withChecksum(String[] csvRecord) {
+        String[] strings = Arrays.copyOf(csvRecord, csvRecord.length + 1);
+        strings[csvRecord.length] = checksum(csvRecord, csvRecord.length);
+        return strings;
     }
 
     public void validateLine(String[] csvRecord) throws DataCorruptionException {
-        if (csvRecord.length != 5) {
+        if (csvRecord.length < FIELDS || csvRecord.length > FIELDS_WITH_CREATED_AT + 1) {
             throw new DataCorruptionException("Data in row: " + Arrays.toString(csvRecord) + " corrupted!!!");
         }
+        int fields = dataFields(csvRecord);
+        if (csvRecord.length > fields && !checksum(csvRecord, fields).equals(csvRecord[fields])
+                && !checksum(withNullText(csvRecord, fields), fields).equals(csvRecord[fields])) {
+            throw new DataCorruptionException("Checksum of row: " + Arrays.toString(csvRecord) + " does not match!!!");
+        }
+    }
+
+    public StorablePayment fromValidCsv(String[] csvRecord) throws DataCorruptionException {
+        validateLine(csvRecord);
+        try {
+            return fromCsv(Arrays.copyOf(csvRecord, dataFields(csvRecord)));
+        } catch (IllegalArgumentException e) {
+            throw new DataCorruptionException("Data in row: " + Arrays.toString(csvRecord) + " corrupted!!! " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Rows without creation time have 5 fields and an optional checksum, rows with it always have a checksum.
+     */
+    private int dataFields(String[] csvRecord) {
+        return csvRecord.length == FIELDS_WITH_CREATED_AT + 1 ? FIELDS_WITH_CREATED_AT : FIELDS;
+    }
+
+    /**
+     * Null fields are written as empty text, so they are hashed as empty text too.
+     */
+    private String checksum(String[] csvRecord, int fields) {
+        CRC32 crc32 = new CRC32();
+        for (int field = 0; field < fields; field++) {
+            if (field > 0) {
+                crc32.update(FIELD_SEPARATOR.getBytes(StandardCharsets.UTF_8));
+            }
+            if (csvRecord[field] != null) {
+                crc32.update(csvRecord[field].getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return Long.toHexString(crc32.getValue());
+    }
+
+    /**
+     * Rows written before null fields were hashed as empty text have checksums of the text "null" in their place.
+     */
+    private String[] withNullText(String[] csvRecord, int fields) {
+        String[] strings = Arrays.copyOf(csvRecord, fields);
+        for (int field = 0; field < fields; field++) {
+            if (strings[field].isEmpty()) {
+                strings[field] = "null";
+            }
+        }
+        return strings;
     }
 }
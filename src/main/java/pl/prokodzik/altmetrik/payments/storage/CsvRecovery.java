@@ -0,0 +1,173 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import com.opencsv.CSVParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Startup pass over a CSV repository file. Reads the file once, sequentially, and moves rows which
+ * fail validation (bad checksum, wrong column count, torn tail after a crash) to {@code <file>.quarantine}.
+ * A file without corrupted rows is left untouched apart from cutting off a torn tail.
+ */
+public class CsvRecovery {
+
+    private static final int NEW_LINE = '\n';
+
+    private final CsvMapper csvMapper;
+    private final Logger logger = LoggerFactory.getLogger(CsvRecovery.class);
+
+    public CsvRecovery(final CsvMapper mapper) {
+        csvMapper = mapper;
+    }
+
+    public RecoveryReport recover(final File file) throws IOException {
+        File quarantine = new File(file.getPath() + ".quarantine");
+        File recovered = new File(file.getPath() + ".recovering");
+        CSVParser parser = new CSVParser();
+        long validRecords = 0;
+        long quarantinedRecords = 0;
+        long validEnd = 0;
+        boolean missingNewLine = false;
+        OutputStream rewrite = null;
+        OutputStream quarantined = null;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = 0;
+            String[] fields;
+            int next;
+            do {
+                next = readLine(input, line);
+                offset += line.size();
+                if (line.size() == 0) {
+                    break;
+                }
+                record.write(line.toByteArray());
+                fields = parser.parseLineMulti(withoutLineEnd(line.toString(Charset.defaultCharset())));
+                if (parser.isPending() && next != -1) {
+                    continue;
+                }
+                if (isValid(parser, fields)) {
+                    validRecords++;
+                    missingNewLine = next == -1;
+                    if (rewrite != null) {
+                        record.writeTo(rewrite);
+                    } else {
+                        validEnd = offset;
+                    }
+                } else {
+                    quarantinedRecords++;
+                    if (quarantined == null) {
+                        quarantined = new FileOutputStream(quarantine, true);
+                    }
+                    record.writeTo(quarantined);
+                    if (next != -1 && rewrite == null) {
+                        rewrite = copyPrefix(file, recovered, validEnd);
+                    }
+                }
+                record.reset();
+            } while (next != -1);
+            if (missingNewLine) {
+                appendNewLine(file, rewrite);
+            }
+        } finally {
+            if (quarantined != null) {
+                quarantined.close();
+            }
+            if (rewrite != null) {
+                rewrite.close();
+            }
+        }
+        long truncatedBytes = 0;
+        if (rewrite != null) {
+            Files.move(recovered.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else if (quarantinedRecords > 0) {
+            truncatedBytes = truncate(file, validEnd);
+        }
+        RecoveryReport report = new RecoveryReport(validRecords, quarantinedRecords, truncatedBytes);
+        if (quarantinedRecords > 0) {
+            logger.warn("Recovered {}: {}, corrupted rows moved to {}", file, report, quarantine);
+        }
+        return report;
+    }
+
+    private boolean isValid(final CSVParser parser, final String[] fields) {
+        if (parser.isPending()) {
+            return false;
+        }
+        try {
+            csvMapper.fromValidCsv(fields);
+            return true;
+        } catch (DataCorruptionException e) {
+            return false;
+        }
+    }
+
+    private int readLine(final InputStream input, final ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int next;
+        while ((next = input.read()) != -1) {
+            line.write(next);
+            if (next == NEW_LINE) {
+                return next;
+            }
+        }
+        return next;
+    }
+
+    private String withoutLineEnd(final String line) {
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == NEW_LINE) {
+            end--;
+        }
+        if (end > 0 && line.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+
+    private void appendNewLine(final File file, final OutputStream rewrite) throws IOException {
+        if (rewrite != null) {
+            rewrite.write(NEW_LINE);
+            return;
+        }
+        try (OutputStream append = new FileOutputStream(file, true)) {
+            append.write(NEW_LINE);
+        }
+    }
+
+    private OutputStream copyPrefix(final File file, final File target, final long length) throws IOException {
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             FileChannel destination = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long copied = 0;
+            while (copied < length) {
+                copied += source.transferTo(copied, length - copied, destination);
+            }
+        }
+        return new FileOutputStream(target, true);
+    }
+
+    private long truncate(final File file, final long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            long truncated = channel.size() - length;
+            channel.truncate(length);
+            channel.force(false);
+            return truncated;
+        }
+    }
+}
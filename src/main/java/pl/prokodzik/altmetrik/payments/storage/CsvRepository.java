@@ -9,143 +9,354 @@ import org.slf4j.LoggerFactory;
 import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
 import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
 import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.exceptions.StorageException;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
 
-public class CsvRepository extends Repository<StorablePayment, String> {
+public class CsvRepository extends Repository<StorablePayment, String> implements Warmable {
+
+    private static final long MIN_FILTER_CAPACITY = 1024;
+    private static final double FILTER_FALSE_POSITIVE_PROBABILITY = 0.01;
 
     private final File file;
     private final CsvMapper csvMapper;
+    private final Durability durability;
+    private final CsvRecovery recovery;
+    private volatile ScalableBloomFilter idFilter;
+    private List<String> savedWhileWarming;
+    private boolean recovered;
     private final Logger logger = LoggerFactory.getLogger(CsvRepository.class);
 
     public CsvRepository(final Supplier<String> idSupplier, final CsvMapper mapper, final File outputFile) throws IOException {
+        this(idSupplier, mapper, outputFile, Durability.osBuffered());
+    }
+
+    public CsvRepository(final Supplier<String> idSupplier, final CsvMapper mapper, final File outputFile, final Durability fileDurability) throws IOException {
+        super(idSupplier);
+        file = outputFile;
+        csvMapper = mapper;
+        durability = fileDurability;
+        recovery = null;
+        warmUp();
+    }
+
+    /**
+     * Opens the file without reading it. Recovery and building the id filter are left to {@link #warmUp()},
+     * until then every lookup reads the file and recovery runs before the first write at the latest.
+     */
+    public CsvRepository(final Supplier<String> idSupplier, final CsvMapper mapper, final File outputFile, final Durability fileDurability, final CsvRecovery csvRecovery) {
         super(idSupplier);
         file = outputFile;
         csvMapper = mapper;
+        durability = fileDurability;
+        recovery = csvRecovery;
     }
 
+    /**
+     * Recovers the file under the repository lock, then reads it once without the lock, so lookups and writes
+     * go on meanwhile. The file is only appended to or atomically replaced, the pass sees it as it was when opened
+     * plus possibly some appended rows. Ids saved during the pass are added to the id filter before it is used.
+     */
     @Override
-    public StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+    public void warmUp(final Consumer<StorablePayment> stored) throws IOException {
+        boolean buildFilter;
+        synchronized (this) {
+            ensureRecovered();
+            buildFilter = idFilter == null && savedWhileWarming == null;
+            if (buildFilter) {
+                savedWhileWarming = new ArrayList<>();
+            }
+        }
+        List<String> ids = new ArrayList<>();
+        try {
+            try (CSVReader reader = new CSVReader(new FileReader(file))) {
+                String[] nextLine;
+                while ((nextLine = readNextRecord(reader)) != null) {
+                    ids.add(nextLine[0]);
+                    try {
+                        stored.accept(csvMapper.fromValidCsv(nextLine));
+                    } catch (DataCorruptionException e) {
+                        logger.warn("Skipping corrupted row. {}", e.getLocalizedMessage());
+                    }
+                }
+            }
+            if (buildFilter) {
+                synchronized (this) {
+                    ids.addAll(savedWhileWarming);
+                    ScalableBloomFilter filter = new ScalableBloomFilter(Math.max(MIN_FILTER_CAPACITY, ids.size() * 2L), FILTER_FALSE_POSITIVE_PROBABILITY);
+                    ids.forEach(filter::add);
+                    idFilter = filter;
+                }
+            }
+        } finally {
+            if (buildFilter) {
+                synchronized (this) {
+                    savedWhileWarming = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
         String uniqueId = storablePayment.getId();
         if (uniqueId == null) {
             uniqueId = this.supplyUniqueId();
-            logger.debug("Generated unique id: " + uniqueId);
+            logger.debug("Generated unique id: {}", uniqueId);
         }
         try {
-            Optional<String> recordInFile;
-            recordInFile = findRecordInFile(storablePayment, file);
+            ensureRecovered();
+            Optional<String> recordInFile = Optional.empty();
+            if (mightContain(uniqueId)) {
+                recordInFile = findRecordInFile(uniqueId, file);
+                if (recordInFile.isEmpty()) {
+                    recordFalsePositive();
+                }
+            }
             if (recordInFile.isPresent()) {
                 throw new PaymentAlreadyExistsException("Payment with this id already exists");
             } else {
                 StorablePayment build = updateStorablePaymentRecordId(storablePayment, uniqueId);
-                FileWriter fileWriter = new FileWriter(file, true);
-                CSVWriter csvWriter = new CSVWriter(fileWriter);
-                csvWriter.writeNext(csvMapper.toCsv(build));
+                FileOutputStream outputStream = new FileOutputStream(file, true);
+                CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(outputStream));
+                csvWriter.writeNext(csvMapper.withChecksum(csvMapper.toCsv(build)));
+                csvWriter.flush();
+                durability.afterWrite(file.toPath(), outputStream.getChannel());
                 csvWriter.close();
-                fileWriter.close();
+                if (idFilter != null) {
+                    idFilter.add(uniqueId);
+                } else if (savedWhileWarming != null) {
+                    savedWhileWarming.add(uniqueId);
+                }
                 return build;
             }
         } catch (IOException | CsvValidationException e) {
-            e.printStackTrace();
+            logger.error("File reading/writing exception", e);
             return null;
         }
 
     }
 
     @Override
-    public StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+    public synchronized StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        if (!mightContain(storablePayment.getId())) {
+            throw new PaymentNotFoundException("Payment not found");
+        }
         try {
+            ensureRecovered();
             Map<String, StorablePayment> collect = getStringStorablePaymentMap(file);
             StorablePayment oldEntry = collect.get(storablePayment.getId());
             if (oldEntry == null) {
+                recordFalsePositive();
                 throw new PaymentNotFoundException("Payment not found");
             }
             collect.put(storablePayment.getId(), storablePayment);
             writeAllToCsv(collect, file, csvMapper);
             return storablePayment;
         } catch (IOException | CsvException e) {
-            e.printStackTrace();
+            logger.error("File reading/writing exception", e);
         }
         return null;
     }
 
     @Override
-    public void delete(final String id) throws PaymentNotFoundException {
+    public synchronized void delete(final String id) throws PaymentNotFoundException {
+        if (!mightContain(id)) {
+            throw new PaymentNotFoundException("Payment not found");
+        }
         try {
+            ensureRecovered();
             Map<String, StorablePayment> collect = getStringStorablePaymentMap(file);
             StorablePayment oldEntry = collect.get(id);
             if (oldEntry == null) {
+                recordFalsePositive();
                 throw new PaymentNotFoundException("Payment not found");
             }
             collect.remove(id);
             writeAllToCsv(collect, file, csvMapper);
         } catch (IOException | CsvException e) {
-            logger.error("File reading/writing exception. " + e.getLocalizedMessage());
+            logger.error("File reading/writing exception", e);
+        }
+    }
+
+    /**
+     * Reads the file once, changes all matching rows and rewrites the file once.
+     */
+    @Override
+    public synchronized List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        List<StorablePayment> updated = new ArrayList<>();
+        try {
+            ensureRecovered();
+            Map<String, StorablePayment> collect = getStringStorablePaymentMap(file);
+            for (Map.Entry<String, StorablePayment> entry : collect.entrySet()) {
+                if (filter.test(entry.getValue())) {
+                    entry.setValue(change.apply(entry.getValue()));
+                    updated.add(entry.getValue());
+                }
+            }
+            if (!updated.isEmpty()) {
+                writeAllToCsv(collect, file, csvMapper);
+            }
+            return updated;
+        } catch (IOException | CsvException | PaymentNotFoundException e) {
+            throw new StorageException("Bulk update of " + file + " failed", e);
+        }
+    }
+
+    @Override
+    public synchronized List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        List<String> deleted = new ArrayList<>();
+        try {
+            ensureRecovered();
+            Map<String, StorablePayment> collect = getStringStorablePaymentMap(file);
+            collect.values().removeIf(payment -> filter.test(payment) && deleted.add(payment.getId()));
+            if (!deleted.isEmpty()) {
+                writeAllToCsv(collect, file, csvMapper);
+            }
+            return deleted;
+        } catch (IOException | CsvException | PaymentNotFoundException e) {
+            throw new StorageException("Bulk delete from " + file + " failed", e);
         }
     }
 
     @Override
-    public Optional<StorablePayment> getById(final String id) {
+    public synchronized Optional<StorablePayment> getById(final String id) {
+        if (!mightContain(id)) {
+            return Optional.empty();
+        }
         try {
-            return Optional.ofNullable(getStringStorablePaymentMap(file).get(id));
+            Optional<StorablePayment> byId = Optional.ofNullable(getStringStorablePaymentMap(file).get(id));
+            if (byId.isEmpty()) {
+                recordFalsePositive();
+            }
+            return byId;
         } catch (IOException | CsvException | PaymentNotFoundException e) {
-            logger.error("File reading/writing exception. " + e.getLocalizedMessage());
+            logger.error("File reading/writing exception", e);
         }
         return Optional.empty();
     }
 
     @Override
-    public List<StorablePayment> getAll() {
+    public synchronized List<StorablePayment> getAll() {
         try {
             Map<String, StorablePayment> stringStorablePaymentMap = getStringStorablePaymentMap(file);
             return stringStorablePaymentMap.values().stream().collect(Collectors.toUnmodifiableList());
         } catch (IOException | CsvException | PaymentNotFoundException e) {
-            logger.error("File reading/writing exception. " + e.getLocalizedMessage());
+            logger.error("File reading/writing exception", e);
         }
         return null;
     }
 
+    @Override
+    public Map<String, Object> getMetrics() {
+        ScalableBloomFilter filter = idFilter;
+        return filter == null ? Map.of() : filter.getMetrics();
+    }
+
+    private void ensureRecovered() throws IOException {
+        if (recovery != null && !recovered) {
+            recovery.recover(file);
+            recovered = true;
+        }
+    }
+
+    private boolean mightContain(final String id) {
+        ScalableBloomFilter filter = idFilter;
+        return filter == null || filter.mightContain(id);
+    }
+
+    private void recordFalsePositive() {
+        ScalableBloomFilter filter = idFilter;
+        if (filter != null) {
+            filter.recordFalsePositive();
+        }
+    }
 
     private StorablePayment updateStorablePaymentRecordId(StorablePayment storablePayment, String uniqueId) {
         return StorablePayment.builder().accountNumber(storablePayment.getAccountNumber())
                 .amount(storablePayment.getAmount()).currency(storablePayment.getCurrency())
-                .userId(storablePayment.getUserId()).id(uniqueId).build();
+                .userId(storablePayment.getUserId()).createdAt(storablePayment.getCreatedAt()).id(uniqueId).build();
     }
 
-    private Optional<String> findRecordInFile(final StorablePayment storablePayment, final File file) throws IOException, CsvValidationException {
-        CSVReader reader = new CSVReader(new FileReader(file));
-        String[] nextLine;
-        while ((nextLine = reader.readNext()) != null) {
-            if (storablePayment.getId().equals(nextLine[0])) {
-                return Arrays.stream(nextLine).reduce((str1, str2) -> str1 + str2);
+    private Optional<String> findRecordInFile(final String id, final File file) throws IOException, CsvValidationException {
+        try (CSVReader reader = new CSVReader(new FileReader(file))) {
+            String[] nextLine;
+            while ((nextLine = reader.readNext()) != null) {
+                if (id.equals(nextLine[0])) {
+                    return Arrays.stream(nextLine).reduce((str1, str2) -> str1 + str2);
+                }
             }
         }
         return Optional.empty();
     }
 
     private Map<String, StorablePayment> getStringStorablePaymentMap(final File file) throws IOException, CsvException, PaymentNotFoundException {
-        CSVReader reader = new CSVReader(new FileReader(file));
-        List<String[]> allLines = reader.readAll();
-        Map<String, StorablePayment> collect = allLines.stream().collect(Collectors.toMap(line -> line[0], csvMapper::fromCsv));
-        reader.close();
+        Map<String, StorablePayment> collect = new LinkedHashMap<>();
+        try (CSVReader reader = new CSVReader(new FileReader(file))) {
+            String[] nextLine;
+            while ((nextLine = readNextRecord(reader)) != null) {
+                try {
+                    StorablePayment storablePayment = csvMapper.fromValidCsv(nextLine);
+                    collect.put(storablePayment.getId(), storablePayment);
+                } catch (DataCorruptionException e) {
+                    logger.warn("Skipping corrupted row. {}", e.getLocalizedMessage());
+                }
+            }
+        }
         return collect;
     }
 
+    private String[] readNextRecord(final CSVReader reader) {
+        try {
+            return reader.readNext();
+        } catch (IOException | CsvValidationException e) {
+            logger.warn("Skipping unreadable end of file. {}", e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the rows to a new file which replaces the old one only once it is on the disk, so a crash
+     * leaves either the old or the new file whatever the durability mode.
+     */
     private void writeAllToCsv(final Map<String, StorablePayment> collect, final File file, final CsvMapper csvMapper) throws IOException {
-        CSVWriter csvWriter = new CSVWriter(new FileWriter(file));
-        csvWriter.writeAll(collect.values().stream().map(csvMapper::toCsv).collect(toList()));
-        csvWriter.close();
+        File rewrite = new File(file.getPath() + ".rewrite");
+        try (FileOutputStream outputStream = new FileOutputStream(rewrite);
+             CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(outputStream))) {
+            csvWriter.writeAll(collect.values().stream().map(csvMapper::toCsv).map(csvMapper::withChecksum).collect(toList()));
+            csvWriter.flush();
+            outputStream.getChannel().force(true);
+        }
+        Files.move(rewrite.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.getAbsoluteFile().getParentFile());
+    }
+
+    private void syncDirectory(final File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not sync directory {}", directory, e);
+        }
     }
 }
@@ -0,0 +1,120 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides when data written by file backed repositories reaches the disk.
+ * <ul>
+ * <li>{@code none} - repositories may keep written data in their own buffers</li>
+ * <li>{@code os-buffered} - every write is handed over to the OS, which flushes it whenever it likes</li>
+ * <li>{@code fsync-per-write} - every write is forced to the disk before the call returns</li>
+ * <li>{@code fsync-batched-every-N-ms} - writes are handed over to the OS and forced to the disk by a background thread every N ms</li>
+ * </ul>
+ */
+public class Durability implements Closeable {
+
+    private static final Pattern BATCHED = Pattern.compile("fsync-batched-every-(\\d+)-ms");
+
+    private final DurabilityMode mode;
+    private final long batchIntervalMillis;
+    private final Set<Path> pendingSync = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private final Logger logger = LoggerFactory.getLogger(Durability.class);
+
+    public Durability(final DurabilityMode durabilityMode, final long intervalMillis) {
+        mode = durabilityMode;
+        batchIntervalMillis = intervalMillis;
+        if (mode == DurabilityMode.FSYNC_BATCHED) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "durability-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::syncPending, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    public static Durability parse(final String config) {
+        for (DurabilityMode durabilityMode : DurabilityMode.values()) {
+            if (durabilityMode.getConfigName().equals(config)) {
+                if (durabilityMode == DurabilityMode.FSYNC_BATCHED) {
+                    break;
+                }
+                return new Durability(durabilityMode, 0);
+            }
+        }
+        Matcher matcher = BATCHED.matcher(config);
+        if (matcher.matches() && Long.parseLong(matcher.group(1)) > 0) {
+            return new Durability(DurabilityMode.FSYNC_BATCHED, Long.parseLong(matcher.group(1)));
+        }
+        throw new IllegalArgumentException("Unknown durability mode: " + config);
+    }
+
+    public static Durability osBuffered() {
+        return new Durability(DurabilityMode.OS_BUFFERED, 0);
+    }
+
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    public boolean isWriteDeferred() {
+        return mode == DurabilityMode.NONE;
+    }
+
+    public void afterWrite(final Path file, final FileChannel channel) throws IOException {
+        switch (mode) {
+            case FSYNC_PER_WRITE:
+                channel.force(false);
+                break;
+            case FSYNC_BATCHED:
+                pendingSync.add(file);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            syncPending();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mode == DurabilityMode.FSYNC_BATCHED ? "fsync-batched-every-" + batchIntervalMillis + "-ms" : mode.getConfigName();
+    }
+
+    private void syncPending() {
+        for (Path file : pendingSync) {
+            pendingSync.remove(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                logger.debug("{} was deleted before it was synced", file);
+            } catch (IOException e) {
+                logger.error("Could not sync {} to disk", file, e);
+            }
+        }
+    }
+}
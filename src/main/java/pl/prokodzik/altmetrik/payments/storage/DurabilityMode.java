@@ -0,0 +1,15 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum DurabilityMode {
+    NONE("none"),
+    OS_BUFFERED("os-buffered"),
+    FSYNC_PER_WRITE("fsync-per-write"),
+    FSYNC_BATCHED("fsync-batched-every-N-ms");
+
+    private final String configName;
+}
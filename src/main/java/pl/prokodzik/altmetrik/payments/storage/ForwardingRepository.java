@@ -0,0 +1,105 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Base for repositories decorating another one, forwards every call to the delegate.
+ */
+public abstract class ForwardingRepository extends Repository<StorablePayment, String> implements Closeable {
+
+    protected final Repository<StorablePayment, String> delegate;
+
+    protected ForwardingRepository(final Repository<StorablePayment, String> repository) {
+        super(repository::supplyUniqueId);
+        delegate = repository;
+    }
+
+    @Override
+    public StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+        return delegate.save(storablePayment);
+    }
+
+    @Override
+    public StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        return delegate.update(storablePayment);
+    }
+
+    @Override
+    public void delete(final String id) throws PaymentNotFoundException {
+        delegate.delete(id);
+    }
+
+    @Override
+    public Optional<StorablePayment> getById(final String id) {
+        return delegate.getById(id);
+    }
+
+    @Override
+    public List<StorablePayment> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public List<StorablePayment> getPage(final String afterId, final int limit) {
+        return delegate.getPage(afterId, limit);
+    }
+
+    @Override
+    public List<StorablePayment> getCreatedBetween(final long from, final long to) {
+        return delegate.getCreatedBetween(from, to);
+    }
+
+    @Override
+    public List<StorablePayment> getSortedByAmount(final Currency currency, final long minAmount, final long maxAmount, final boolean descending, final int limit) {
+        return delegate.getSortedByAmount(currency, minAmount, maxAmount, descending, limit);
+    }
+
+    @Override
+    public List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        return delegate.updateWhere(filter, change);
+    }
+
+    @Override
+    public List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        return delegate.deleteWhere(filter);
+    }
+
+    @Override
+    public void addRemovalListener(final Consumer<Collection<String>> listener) {
+        delegate.addRemovalListener(listener);
+    }
+
+    @Override
+    public void removeExpired() {
+        delegate.removeExpired();
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        return delegate.getMetrics();
+    }
+
+    @Override
+    public boolean isFullyLoaded() {
+        return delegate.isFullyLoaded();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+}
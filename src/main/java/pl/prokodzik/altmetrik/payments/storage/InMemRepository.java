@@ -5,10 +5,13 @@ import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 public class InMemRepository extends Repository<StorablePayment, String> {
 
@@ -39,7 +42,7 @@ public class InMemRepository extends Repository<StorablePayment, String> {
         }
         StorablePayment build = StorablePayment.builder().accountNumber(storablePayment.getAccountNumber())
                 .amount(storablePayment.getAmount()).currency(storablePayment.getCurrency())
-                .userId(storablePayment.getUserId()).id(uniqueId).build();
+                .userId(storablePayment.getUserId()).createdAt(storablePayment.getCreatedAt()).id(uniqueId).build();
         payments.put(uniqueId, build);
         return payments.get(uniqueId);
     }
@@ -62,6 +65,32 @@ public class InMemRepository extends Repository<StorablePayment, String> {
         payments.remove(id);
     }
 
+    @Override
+    public List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        List<StorablePayment> updated = new ArrayList<>();
+        for (Map.Entry<String, StorablePayment> entry : payments.entrySet()) {
+            if (filter.test(entry.getValue())) {
+                entry.setValue(change.apply(entry.getValue()));
+                updated.add(entry.getValue());
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        List<String> deleted = new ArrayList<>();
+        Iterator<StorablePayment> iterator = payments.values().iterator();
+        while (iterator.hasNext()) {
+            StorablePayment payment = iterator.next();
+            if (filter.test(payment)) {
+                iterator.remove();
+                deleted.add(payment.getId());
+            }
+        }
+        return deleted;
+    }
+
     @Override
     public Optional<StorablePayment> getById(String id) {
         return Optional.ofNullable(payments.get(id));
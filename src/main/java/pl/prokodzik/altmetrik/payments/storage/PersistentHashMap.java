@@ -0,0 +1,296 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable hash array mapped trie. Every modification returns a new map sharing all untouched
+ * nodes with the previous version, so taking a snapshot is just keeping a reference.
+ */
+final class PersistentHashMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(new BitmapNode(0, new Object[0]), 0);
+
+    private final BitmapNode root;
+    private final int size;
+
+    private PersistentHashMap(final BitmapNode root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(final K key) {
+        return find(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(final K key) {
+        Entry entry = find(key);
+        return entry == null ? null : (V) entry.value;
+    }
+
+    PersistentHashMap<K, V> put(final K key, final V value) {
+        boolean[] added = new boolean[1];
+        BitmapNode newRoot = (BitmapNode) root.put(0, hash(key), key, value, added);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    PersistentHashMap<K, V> remove(final K key) {
+        Object newRoot = root.remove(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        if (newRoot == null) {
+            return empty();
+        }
+        return new PersistentHashMap<>((BitmapNode) newRoot, size - 1);
+    }
+
+    Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Entry find(final K key) {
+        int hash = hash(key);
+        Object node = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (node instanceof BitmapNode) {
+                BitmapNode bitmapNode = (BitmapNode) node;
+                int bit = bit(hash, shift);
+                if ((bitmapNode.bitmap & bit) == 0) {
+                    return null;
+                }
+                node = bitmapNode.slots[bitmapNode.index(bit)];
+            } else if (node instanceof CollisionNode) {
+                return ((CollisionNode) node).find(hash, key);
+            } else {
+                Entry entry = (Entry) node;
+                return entry.matches(hash, key) ? entry : null;
+            }
+        }
+    }
+
+    private static int hash(final Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(final int hash, final int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Object merge(final int shift, final Object first, final int firstHash, final Object second, final int secondHash) {
+        if (firstHash == secondHash && first instanceof Entry && second instanceof Entry) {
+            return new CollisionNode(firstHash, new Entry[]{(Entry) first, (Entry) second});
+        }
+        int firstBit = bit(firstHash, shift);
+        int secondBit = bit(secondHash, shift);
+        if (firstBit == secondBit) {
+            return new BitmapNode(firstBit, new Object[]{merge(shift + BITS, first, firstHash, second, secondHash)});
+        }
+        Object[] slots = Integer.compareUnsigned(firstBit, secondBit) < 0 ? new Object[]{first, second} : new Object[]{second, first};
+        return new BitmapNode(firstBit | secondBit, slots);
+    }
+
+    private static int hashOf(final Object node) {
+        return node instanceof Entry ? ((Entry) node).hash : ((CollisionNode) node).hash;
+    }
+
+    private static final class Entry {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+
+        private Entry(final int hash, final Object key, final Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        private boolean matches(final int hash, final Object key) {
+            return this.hash == hash && this.key.equals(key);
+        }
+    }
+
+    private static final class BitmapNode {
+        private final int bitmap;
+        private final Object[] slots;
+
+        private BitmapNode(final int bitmap, final Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index(final int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private Object put(final int shift, final int hash, final Object key, final Object value, final boolean[] added) {
+            int bit = bit(hash, shift);
+            int idx = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, idx);
+                newSlots[idx] = new Entry(hash, key, value);
+                System.arraycopy(slots, idx, newSlots, idx + 1, slots.length - idx);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+            Object slot = slots[idx];
+            Object newSlot;
+            if (slot instanceof BitmapNode) {
+                newSlot = ((BitmapNode) slot).put(shift + BITS, hash, key, value, added);
+            } else if (slot instanceof CollisionNode && ((CollisionNode) slot).hash == hash) {
+                newSlot = ((CollisionNode) slot).put(key, value, added);
+            } else if (slot instanceof Entry && ((Entry) slot).matches(hash, key)) {
+                newSlot = ((Entry) slot).value == value ? slot : new Entry(hash, key, value);
+            } else {
+                added[0] = true;
+                newSlot = merge(shift + BITS, slot, hashOf(slot), new Entry(hash, key, value), hash);
+            }
+            return newSlot == slot ? this : withSlot(idx, newSlot);
+        }
+
+        private Object remove(final int shift, final int hash, final Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = index(bit);
+            Object slot = slots[idx];
+            Object newSlot;
+            if (slot instanceof BitmapNode) {
+                newSlot = ((BitmapNode) slot).remove(shift + BITS, hash, key);
+            } else if (slot instanceof CollisionNode) {
+                newSlot = ((CollisionNode) slot).remove(hash, key);
+            } else {
+                newSlot = ((Entry) slot).matches(hash, key) ? null : slot;
+            }
+            if (newSlot == slot) {
+                return this;
+            }
+            if (newSlot != null) {
+                return withSlot(idx, newSlot);
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            if (slots.length == 2 && slots[1 - idx] instanceof Entry && shift > 0) {
+                return slots[1 - idx];
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, idx);
+            System.arraycopy(slots, idx + 1, newSlots, idx, slots.length - idx - 1);
+            return new BitmapNode(bitmap & ~bit, newSlots);
+        }
+
+        private BitmapNode withSlot(final int idx, final Object slot) {
+            Object[] newSlots = slots.clone();
+            newSlots[idx] = slot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+    }
+
+    private static final class CollisionNode {
+        private final int hash;
+        private final Entry[] entries;
+
+        private CollisionNode(final int hash, final Entry[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        private Entry find(final int hash, final Object key) {
+            for (Entry entry : entries) {
+                if (entry.matches(hash, key)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        private Object put(final Object key, final Object value, final boolean[] added) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].key.equals(key)) {
+                    Entry[] newEntries = entries.clone();
+                    newEntries[i] = new Entry(hash, key, value);
+                    return new CollisionNode(hash, newEntries);
+                }
+            }
+            Entry[] newEntries = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, newEntries, 0, entries.length);
+            newEntries[entries.length] = new Entry(hash, key, value);
+            added[0] = true;
+            return new CollisionNode(hash, newEntries);
+        }
+
+        private Object remove(final int hash, final Object key) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].matches(hash, key)) {
+                    if (entries.length == 2) {
+                        return entries[1 - i];
+                    }
+                    Entry[] newEntries = new Entry[entries.length - 1];
+                    System.arraycopy(entries, 0, newEntries, 0, i);
+                    System.arraycopy(entries, i + 1, newEntries, i, entries.length - i - 1);
+                    return new CollisionNode(hash, newEntries);
+                }
+            }
+            return this;
+        }
+    }
+
+    private static final class ValueIterator<V> implements Iterator<V> {
+        private final Deque<Object> pending = new ArrayDeque<>();
+
+        private ValueIterator(final BitmapNode root) {
+            pending.push(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!pending.isEmpty() && !(pending.peek() instanceof Entry)) {
+                Object node = pending.pop();
+                Object[] children = node instanceof BitmapNode ? ((BitmapNode) node).slots : ((CollisionNode) node).entries;
+                for (int i = children.length - 1; i >= 0; i--) {
+                    pending.push(children[i]);
+                }
+            }
+            return !pending.isEmpty();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (V) ((Entry) pending.pop()).value;
+        }
+    }
+}
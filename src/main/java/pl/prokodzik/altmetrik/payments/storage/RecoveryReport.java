@@ -0,0 +1,14 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class RecoveryReport {
+    private final long validRecords;
+    private final long quarantinedRecords;
+    private final long truncatedBytes;
+}
@@ -3,12 +3,25 @@ package pl.prokodzik.altmetrik.payments.storage;
 import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
 import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Currency;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static java.util.stream.Collectors.toList;
 
 public abstract class Repository<S extends StorablePayment, K> {
 
+    public static final Comparator<StorablePayment> AMOUNT_ORDER = Comparator.comparing(StorablePayment::getAmount)
+            .thenComparing(StorablePayment::getId);
+
     private final Supplier<K> idSupplier;
 
     protected Repository(Supplier<K> idSupplier) {
@@ -28,4 +41,107 @@ public abstract class Repository<S extends StorablePayment, K> {
     public abstract Optional<S> getById(K id);
 
     public abstract List<S> getAll();
+
+    /**
+     * Replaces every payment matching {@code filter} with the result of {@code change}, which has to keep its id.
+     * Repositories override it to find and change all payments in a single pass and persist them with one write.
+     *
+     * @return updated payments
+     */
+    public List<S> updateWhere(Predicate<? super S> filter, UnaryOperator<S> change) {
+        List<S> updated = new ArrayList<>();
+        for (S payment : getAll()) {
+            if (filter.test(payment)) {
+                try {
+                    S result = update(change.apply(payment));
+                    if (result != null) {
+                        updated.add(result);
+                    }
+                } catch (PaymentNotFoundException e) {
+                    // deleted since it was listed
+                }
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Deletes every payment matching {@code filter}.
+     *
+     * @return ids of deleted payments
+     */
+    public List<K> deleteWhere(Predicate<? super S> filter) {
+        List<K> deleted = new ArrayList<>();
+        for (S payment : getAll()) {
+            if (filter.test(payment)) {
+                try {
+                    @SuppressWarnings("unchecked")
+                    K id = (K) payment.getId();
+                    delete(id);
+                    deleted.add(id);
+                } catch (PaymentNotFoundException e) {
+                    // deleted since it was listed
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Registers a listener called with ids of payments the repository removes by itself, e.g. when their retention
+     * period is over. Repositories which never do so ignore it.
+     */
+    public void addRemovalListener(Consumer<Collection<K>> listener) {
+    }
+
+    /**
+     * Removes payments whose retention period is over now, instead of waiting for the next write or full read.
+     */
+    public void removeExpired() {
+    }
+
+    public Map<String, Object> getMetrics() {
+        return Map.of();
+    }
+
+    /**
+     * False while the repository is still loading and {@link #getAll()} may return only part of the payments.
+     */
+    public boolean isFullyLoaded() {
+        return true;
+    }
+
+    /**
+     * Payments created in {@code [from, to)} epoch millis, oldest first. Payments without creation time are left out.
+     */
+    public List<S> getCreatedBetween(long from, long to) {
+        return getAll().stream()
+                .filter(payment -> payment.getCreatedAt() != null && payment.getCreatedAt() >= from && payment.getCreatedAt() < to)
+                .sorted(Comparator.comparing(StorablePayment::getCreatedAt))
+                .collect(toList());
+    }
+
+    /**
+     * Payments with amount in {@code [minAmount, maxAmount]}, ordered by amount and then id, at most {@code limit} of them.
+     * Payments without amount are left out.
+     *
+     * @param currency only payments in this currency, all payments when null
+     */
+    public List<S> getSortedByAmount(Currency currency, long minAmount, long maxAmount, boolean descending, int limit) {
+        return getAll().stream()
+                .filter(payment -> payment.getAmount() != null && payment.getAmount() >= minAmount && payment.getAmount() <= maxAmount)
+                .filter(payment -> currency == null || currency.equals(payment.getCurrency()))
+                .sorted(descending ? AMOUNT_ORDER.reversed() : AMOUNT_ORDER)
+                .limit(limit)
+                .collect(toList());
+    }
+
+    public List<S> getPage(K afterId, int limit) {
+        String after = afterId == null ? null : afterId.toString();
+        return getAll().stream()
+                .sorted(Comparator.comparing(StorablePayment::getId))
+                .filter(payment -> after == null || payment.getId().compareTo(after) > 0)
+                .limit(limit)
+                .collect(toList());
+    }
 }
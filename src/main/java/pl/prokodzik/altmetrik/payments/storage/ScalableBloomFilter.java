@@ -0,0 +1,83 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Probabilistic set of ids which never answers "absent" for an added id. When the newest filter
+ * reaches its capacity a twice as large one with tighter false positive probability is added,
+ * so the filter grows with the data without being rebuilt and the overall error stays bounded.
+ */
+public class ScalableBloomFilter {
+
+    private static final int GROWTH = 2;
+    private static final double TIGHTENING = 0.5;
+
+    private final List<BloomFilter> filters = new CopyOnWriteArrayList<>();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder definitelyAbsent = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public ScalableBloomFilter(final long expectedInsertions, final double falsePositiveProbability) {
+        filters.add(new BloomFilter(expectedInsertions, falsePositiveProbability * (1 - TIGHTENING)));
+    }
+
+    public void add(final String key) {
+        BloomFilter newest = filters.get(filters.size() - 1);
+        if (newest.isFull()) {
+            newest = grow(newest);
+        }
+        newest.add(key);
+    }
+
+    public boolean mightContain(final String key) {
+        checks.increment();
+        for (BloomFilter filter : filters) {
+            if (filter.mightContain(key)) {
+                return true;
+            }
+        }
+        definitelyAbsent.increment();
+        return false;
+    }
+
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public double getObservedFalsePositiveRate() {
+        long negatives = falsePositives.sum() + definitelyAbsent.sum();
+        return negatives == 0 ? 0 : (double) falsePositives.sum() / negatives;
+    }
+
+    public double getExpectedFalsePositiveRate() {
+        double allNegative = 1;
+        for (BloomFilter filter : filters) {
+            allNegative *= 1 - filter.getCurrentFalsePositiveProbability();
+        }
+        return 1 - allNegative;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("bloomFilters", filters.size());
+        metrics.put("bloomChecks", checks.sum());
+        metrics.put("bloomDefinitelyAbsent", definitelyAbsent.sum());
+        metrics.put("bloomFalsePositives", falsePositives.sum());
+        metrics.put("bloomObservedFalsePositiveRate", getObservedFalsePositiveRate());
+        metrics.put("bloomExpectedFalsePositiveRate", getExpectedFalsePositiveRate());
+        return metrics;
+    }
+
+    private synchronized BloomFilter grow(final BloomFilter full) {
+        BloomFilter newest = filters.get(filters.size() - 1);
+        if (newest == full) {
+            newest = new BloomFilter(full.getCapacity() * GROWTH, full.getFalsePositiveProbability() * TIGHTENING);
+            filters.add(newest);
+        }
+        return newest;
+    }
+}
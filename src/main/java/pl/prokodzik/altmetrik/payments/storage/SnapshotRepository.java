@@ -0,0 +1,125 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory repository where every write publishes a new immutable version of the data with a single CAS.
+ * Readers never lock: they pick up the current version and keep working on it regardless of later writes.
+ */
+public class SnapshotRepository extends Repository<StorablePayment, String> {
+
+    private final AtomicReference<PersistentHashMap<String, StorablePayment>> current = new AtomicReference<>(PersistentHashMap.empty());
+
+    public SnapshotRepository(final Supplier<String> idSupplier) {
+        super(idSupplier);
+    }
+
+    @Override
+    public StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+        String uniqueId = storablePayment.getId();
+        if (uniqueId == null) {
+            uniqueId = this.supplyUniqueId();
+        }
+        StorablePayment build = StorablePayment.builder().accountNumber(storablePayment.getAccountNumber())
+                .amount(storablePayment.getAmount()).currency(storablePayment.getCurrency())
+                .userId(storablePayment.getUserId()).createdAt(storablePayment.getCreatedAt()).id(uniqueId).build();
+        PersistentHashMap<String, StorablePayment> version;
+        do {
+            version = current.get();
+            if (version.containsKey(uniqueId)) {
+                throw new PaymentAlreadyExistsException("Payment already exists");
+            }
+        } while (!current.compareAndSet(version, version.put(uniqueId, build)));
+        return build;
+    }
+
+    @Override
+    public StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        String storablePaymentId = storablePayment.getId();
+        PersistentHashMap<String, StorablePayment> version;
+        do {
+            version = current.get();
+            if (!version.containsKey(storablePaymentId)) {
+                throw new PaymentNotFoundException("Payment not found");
+            }
+        } while (!current.compareAndSet(version, version.put(storablePaymentId, storablePayment)));
+        return storablePayment;
+    }
+
+    @Override
+    public void delete(final String id) throws PaymentNotFoundException {
+        PersistentHashMap<String, StorablePayment> version;
+        do {
+            version = current.get();
+            if (!version.containsKey(id)) {
+                throw new PaymentNotFoundException("Payment not found");
+            }
+        } while (!current.compareAndSet(version, version.remove(id)));
+    }
+
+    /**
+     * All changes are published as one new version, readers see either none or all of them.
+     */
+    @Override
+    public List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        PersistentHashMap<String, StorablePayment> version;
+        PersistentHashMap<String, StorablePayment> changed;
+        List<StorablePayment> updated;
+        do {
+            version = current.get();
+            changed = version;
+            updated = new ArrayList<>();
+            for (StorablePayment payment : version.values()) {
+                if (filter.test(payment)) {
+                    StorablePayment result = change.apply(payment);
+                    changed = changed.put(result.getId(), result);
+                    updated.add(result);
+                }
+            }
+        } while (!current.compareAndSet(version, changed));
+        return updated;
+    }
+
+    @Override
+    public List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        PersistentHashMap<String, StorablePayment> version;
+        PersistentHashMap<String, StorablePayment> changed;
+        List<String> deleted;
+        do {
+            version = current.get();
+            changed = version;
+            deleted = new ArrayList<>();
+            for (StorablePayment payment : version.values()) {
+                if (filter.test(payment)) {
+                    changed = changed.remove(payment.getId());
+                    deleted.add(payment.getId());
+                }
+            }
+        } while (!current.compareAndSet(version, changed));
+        return deleted;
+    }
+
+    @Override
+    public Optional<StorablePayment> getById(final String id) {
+        return Optional.ofNullable(current.get().get(id));
+    }
+
+    @Override
+    public List<StorablePayment> getAll() {
+        return new ArrayList<>(snapshot());
+    }
+
+    public Collection<StorablePayment> snapshot() {
+        return current.get().values();
+    }
+}
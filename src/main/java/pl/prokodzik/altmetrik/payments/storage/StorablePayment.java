@@ -17,4 +17,12 @@ public class StorablePayment {
     private Currency currency;
     private String userId;
     private String accountNumber;
+    /**
+     * Epoch millis when the payment was created, assigned by the server. Null for payments stored before it was introduced.
+     */
+    private Long createdAt;
+
+    public StorablePayment(final String id, final Long amount, final Currency currency, final String userId, final String accountNumber) {
+        this(id, amount, currency, userId, accountNumber, null);
+    }
 }
@@ -0,0 +1,20 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Repository which defers expensive startup work, like scanning its files, until asked to.
+ */
+public interface Warmable {
+
+    default void warmUp() throws IOException {
+        warmUp(payment -> { });
+    }
+
+    /**
+     * Does the startup work and hands every stored payment to the consumer as it is read, in the same pass.
+     * Payments written meanwhile may or may not be handed over.
+     */
+    void warmUp(Consumer<StorablePayment> stored) throws IOException;
+}
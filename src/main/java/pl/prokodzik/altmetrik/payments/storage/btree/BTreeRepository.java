@@ -0,0 +1,446 @@
+package pl.prokodzik.altmetrik.payments.storage.btree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.exceptions.StorageException;
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
+import pl.prokodzik.altmetrik.payments.storage.Durability;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.ScalableBloomFilter;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Disk resident B+tree keyed by payment id. Only a bounded number of pages is kept in memory,
+ * point operations cost O(log n) page reads and leaves are chained for ordered range scans.
+ * Deletes do not rebalance the tree, emptied leaves are simply skipped while scanning.
+ */
+public class BTreeRepository extends Repository<StorablePayment, String> implements Closeable {
+
+    private static final int MAGIC = 0x50415942;
+    private static final int HEADER_PAGE = 0;
+    private static final int MAX_KEY_SIZE = 255;
+    private static final int MAX_ENTRY_SIZE = (PageCache.PAGE_SIZE - Node.HEADER_SIZE) / 4;
+    private static final long MIN_FILTER_CAPACITY = 1024;
+    private static final double FILTER_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private enum Mode {INSERT, UPDATE}
+
+    private final Path path;
+    private final FileChannel channel;
+    private final PageCache cache;
+    private final BinaryMapper binaryMapper;
+    private final Durability durability;
+    private final ScalableBloomFilter idFilter;
+    private final Logger logger = LoggerFactory.getLogger(BTreeRepository.class);
+    private int rootPageId;
+    private long size;
+
+    public BTreeRepository(final Supplier<String> idSupplier, final BinaryMapper mapper, final File file, final int cachePages) throws IOException {
+        this(idSupplier, mapper, file, cachePages, Durability.osBuffered());
+    }
+
+    public BTreeRepository(final Supplier<String> idSupplier, final BinaryMapper mapper, final File file, final int cachePages, final Durability fileDurability) throws IOException {
+        super(idSupplier);
+        binaryMapper = mapper;
+        durability = fileDurability;
+        path = file.toPath();
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            cache = new PageCache(channel, cachePages, 1);
+            rootPageId = cache.allocate(true).pageId;
+            writeBack();
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(20);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException("File " + file + " is not a payments B+tree");
+            }
+            rootPageId = header.getInt();
+            int pageCount = header.getInt();
+            size = header.getLong();
+            cache = new PageCache(channel, cachePages, pageCount);
+        }
+        int height = height();
+        if (cachePages < height + 2) {
+            channel.close();
+            throw new IllegalArgumentException("Page cache of " + cachePages + " pages is too small for a tree of height " + height
+                    + ", it needs at least " + (height + 2));
+        }
+        idFilter = buildIdFilter();
+    }
+
+    @Override
+    public synchronized StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+        String uniqueId = storablePayment.getId();
+        if (uniqueId == null) {
+            uniqueId = this.supplyUniqueId();
+        }
+        StorablePayment build = StorablePayment.builder().accountNumber(storablePayment.getAccountNumber())
+                .amount(storablePayment.getAmount()).currency(storablePayment.getCurrency())
+                .userId(storablePayment.getUserId()).createdAt(storablePayment.getCreatedAt()).id(uniqueId).build();
+        try {
+            put(build, Mode.INSERT);
+            size++;
+            idFilter.add(uniqueId);
+            commit();
+            return build;
+        } catch (PaymentNotFoundException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            logger.error("Page reading/writing exception", e);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        if (!idFilter.mightContain(storablePayment.getId())) {
+            throw new PaymentNotFoundException("Payment not found");
+        }
+        try {
+            put(storablePayment, Mode.UPDATE);
+            commit();
+            return storablePayment;
+        } catch (PaymentNotFoundException e) {
+            idFilter.recordFalsePositive();
+            throw e;
+        } catch (PaymentAlreadyExistsException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            logger.error("Page reading/writing exception", e);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void delete(final String id) throws PaymentNotFoundException {
+        if (!idFilter.mightContain(id)) {
+            throw new PaymentNotFoundException("Payment not found");
+        }
+        try {
+            Node leaf = findLeaf(id);
+            int idx = leaf.search(id);
+            if (idx < 0) {
+                idFilter.recordFalsePositive();
+                throw new PaymentNotFoundException("Payment not found");
+            }
+            leaf.keys.remove(idx);
+            leaf.values.remove(idx);
+            cache.markDirty(leaf);
+            size--;
+            commit();
+        } catch (IOException e) {
+            logger.error("Page reading/writing exception", e);
+        }
+    }
+
+    /**
+     * Walks the leaves once and changes matching entries in place. Entries which no longer fit their leaf are
+     * put again after the walk. Changed pages are written back with a single commit.
+     */
+    @Override
+    public synchronized List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        List<StorablePayment> updated = new ArrayList<>();
+        List<StorablePayment> overflow = new ArrayList<>();
+        try {
+            Node leaf = findLeftmostLeaf();
+            while (true) {
+                int leafSize = leaf.byteSize();
+                for (int idx = 0; idx < leaf.keys.size(); idx++) {
+                    StorablePayment payment = binaryMapper.fromBytes(leaf.values.get(idx));
+                    if (!filter.test(payment)) {
+                        continue;
+                    }
+                    StorablePayment result = change.apply(payment);
+                    byte[] value = binaryMapper.toBytes(result);
+                    int resized = leafSize - leaf.values.get(idx).length + value.length;
+                    if (resized <= PageCache.PAGE_SIZE && 2 + Node.keyLength(leaf.keys.get(idx)) + 2 + value.length <= MAX_ENTRY_SIZE) {
+                        leaf.values.set(idx, value);
+                        leafSize = resized;
+                        cache.markDirty(leaf);
+                    } else {
+                        overflow.add(result);
+                    }
+                    updated.add(result);
+                }
+                if (leaf.next == Node.NO_PAGE) {
+                    break;
+                }
+                leaf = cache.get(leaf.next);
+            }
+            for (StorablePayment payment : overflow) {
+                put(payment, Mode.UPDATE);
+            }
+            commit();
+        } catch (PaymentNotFoundException | PaymentAlreadyExistsException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException | DataCorruptionException e) {
+            throw new StorageException("Bulk update failed", e);
+        }
+        return updated;
+    }
+
+    @Override
+    public synchronized List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        List<String> deleted = new ArrayList<>();
+        try {
+            Node leaf = findLeftmostLeaf();
+            while (true) {
+                for (int idx = leaf.keys.size() - 1; idx >= 0; idx--) {
+                    if (filter.test(binaryMapper.fromBytes(leaf.values.get(idx)))) {
+                        deleted.add(leaf.keys.remove(idx));
+                        leaf.values.remove(idx);
+                        cache.markDirty(leaf);
+                        size--;
+                    }
+                }
+                if (leaf.next == Node.NO_PAGE) {
+                    break;
+                }
+                leaf = cache.get(leaf.next);
+            }
+            commit();
+        } catch (IOException | DataCorruptionException e) {
+            throw new StorageException("Bulk delete failed", e);
+        }
+        return deleted;
+    }
+
+    @Override
+    public synchronized Optional<StorablePayment> getById(final String id) {
+        if (!idFilter.mightContain(id)) {
+            return Optional.empty();
+        }
+        try {
+            Node leaf = findLeaf(id);
+            int idx = leaf.search(id);
+            if (idx >= 0) {
+                return Optional.of(binaryMapper.fromBytes(leaf.values.get(idx)));
+            }
+            idFilter.recordFalsePositive();
+        } catch (IOException | DataCorruptionException e) {
+            logger.error("Page reading/writing exception", e);
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized List<StorablePayment> getAll() {
+        return getPage(null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized List<StorablePayment> getPage(final String afterId, final int limit) {
+        List<StorablePayment> page = new ArrayList<>();
+        try {
+            Node leaf = afterId == null ? findLeftmostLeaf() : findLeaf(afterId);
+            int idx = 0;
+            if (afterId != null) {
+                idx = leaf.search(afterId);
+                idx = idx >= 0 ? idx + 1 : -idx - 1;
+            }
+            while (page.size() < limit) {
+                if (idx < leaf.keys.size()) {
+                    page.add(binaryMapper.fromBytes(leaf.values.get(idx++)));
+                } else if (leaf.next != Node.NO_PAGE) {
+                    leaf = cache.get(leaf.next);
+                    idx = 0;
+                } else {
+                    break;
+                }
+            }
+        } catch (IOException | DataCorruptionException e) {
+            logger.error("Page reading/writing exception", e);
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>(idFilter.getMetrics());
+        metrics.put("pageCacheHits", cache.getHits());
+        metrics.put("pageReads", cache.getReads());
+        metrics.put("pageWrites", cache.getWrites());
+        return metrics;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writeBack();
+        durability.afterWrite(path, channel);
+        channel.close();
+    }
+
+    private ScalableBloomFilter buildIdFilter() throws IOException {
+        ScalableBloomFilter filter = new ScalableBloomFilter(Math.max(MIN_FILTER_CAPACITY, size * 2), FILTER_FALSE_POSITIVE_PROBABILITY);
+        Node leaf = findLeftmostLeaf();
+        while (true) {
+            leaf.keys.forEach(filter::add);
+            if (leaf.next == Node.NO_PAGE) {
+                return filter;
+            }
+            leaf = cache.get(leaf.next);
+        }
+    }
+
+    private void put(final StorablePayment storablePayment, final Mode mode) throws IOException, PaymentAlreadyExistsException, PaymentNotFoundException {
+        String key = storablePayment.getId();
+        byte[] value = binaryMapper.toBytes(storablePayment);
+        if (Node.keyLength(key) > MAX_KEY_SIZE || 2 + Node.keyLength(key) + 2 + value.length > MAX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("Payment " + key + " is too large to be stored");
+        }
+        Split split = put(cache.get(rootPageId), key, value, mode);
+        if (split != null) {
+            Node root = cache.allocate(false);
+            root.children.add(rootPageId);
+            root.keys.add(split.key);
+            root.children.add(split.rightPageId);
+            rootPageId = root.pageId;
+        }
+    }
+
+    private Split put(final Node node, final String key, final byte[] value, final Mode mode) throws IOException, PaymentAlreadyExistsException, PaymentNotFoundException {
+        if (node.leaf) {
+            int idx = node.search(key);
+            if (idx >= 0 && mode == Mode.INSERT) {
+                throw new PaymentAlreadyExistsException("Payment already exists");
+            }
+            if (idx < 0 && mode == Mode.UPDATE) {
+                throw new PaymentNotFoundException("Payment not found");
+            }
+            if (idx >= 0) {
+                node.values.set(idx, value);
+            } else {
+                node.keys.add(-idx - 1, key);
+                node.values.add(-idx - 1, value);
+            }
+            cache.markDirty(node);
+            return node.byteSize() > PageCache.PAGE_SIZE ? splitLeaf(node) : null;
+        }
+        int childIdx = node.childIndex(key);
+        Split split = put(cache.get(node.children.get(childIdx)), key, value, mode);
+        if (split == null) {
+            return null;
+        }
+        node.keys.add(childIdx, split.key);
+        node.children.add(childIdx + 1, split.rightPageId);
+        cache.markDirty(node);
+        return node.byteSize() > PageCache.PAGE_SIZE ? splitInternal(node) : null;
+    }
+
+    private Split splitLeaf(final Node left) throws IOException {
+        int splitAt = splitPoint(left, 1, left.keys.size() - 1);
+        Node right = cache.allocate(true);
+        right.keys.addAll(left.keys.subList(splitAt, left.keys.size()));
+        right.values.addAll(left.values.subList(splitAt, left.values.size()));
+        left.keys.subList(splitAt, left.keys.size()).clear();
+        left.values.subList(splitAt, left.values.size()).clear();
+        right.next = left.next;
+        left.next = right.pageId;
+        cache.markDirty(left);
+        cache.markDirty(right);
+        return new Split(right.keys.get(0), right.pageId);
+    }
+
+    private Split splitInternal(final Node left) throws IOException {
+        int middle = splitPoint(left, 1, left.keys.size() - 2);
+        String promoted = left.keys.get(middle);
+        Node right = cache.allocate(false);
+        right.keys.addAll(left.keys.subList(middle + 1, left.keys.size()));
+        right.children.addAll(left.children.subList(middle + 1, left.children.size()));
+        left.keys.subList(middle, left.keys.size()).clear();
+        left.children.subList(middle + 1, left.children.size()).clear();
+        cache.markDirty(left);
+        cache.markDirty(right);
+        return new Split(promoted, right.pageId);
+    }
+
+    private int splitPoint(final Node node, final int min, final int max) {
+        int half = node.byteSize() / 2;
+        int accumulated = Node.HEADER_SIZE;
+        int idx = 0;
+        while (idx < node.keys.size() && accumulated < half) {
+            accumulated += node.entrySize(idx++);
+        }
+        return Math.max(min, Math.min(max, idx));
+    }
+
+    private Node findLeaf(final String key) throws IOException {
+        Node node = cache.get(rootPageId);
+        while (!node.leaf) {
+            node = cache.get(node.children.get(node.childIndex(key)));
+        }
+        return node;
+    }
+
+    /**
+     * Number of levels, a split touches one node per level plus the new sibling and root.
+     */
+    private int height() throws IOException {
+        int height = 1;
+        Node node = cache.get(rootPageId);
+        while (!node.leaf) {
+            node = cache.get(node.children.get(0));
+            height++;
+        }
+        return height;
+    }
+
+    private Node findLeftmostLeaf() throws IOException {
+        Node node = cache.get(rootPageId);
+        while (!node.leaf) {
+            node = cache.get(node.children.get(0));
+        }
+        return node;
+    }
+
+    private void commit() throws IOException {
+        if (!durability.isWriteDeferred()) {
+            writeBack();
+            durability.afterWrite(path, channel);
+        }
+    }
+
+    private void writeBack() throws IOException {
+        cache.flush();
+        ByteBuffer header = ByteBuffer.allocate(PageCache.PAGE_SIZE);
+        header.putInt(MAGIC).putInt(rootPageId).putInt(cache.getPageCount()).putLong(size);
+        header.position(0);
+        cache.writeFully(header, PageCache.position(HEADER_PAGE));
+    }
+
+    private static class Split {
+        private final String key;
+        private final int rightPageId;
+
+        private Split(final String key, final int rightPageId) {
+            this.key = key;
+            this.rightPageId = rightPageId;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package pl.prokodzik.altmetrik.payments.storage.btree;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decoded form of a single B+tree page.
+ * Leaves hold (id, record) pairs and are chained left to right through {@code next};
+ * internal nodes hold separator keys where {@code children[i]} covers keys lower than {@code keys[i]}.
+ */
+class Node {
+
+    static final int HEADER_SIZE = 7;
+    static final int NO_PAGE = -1;
+
+    private static final byte LEAF = 0;
+    private static final byte INTERNAL = 1;
+
+    final int pageId;
+    final boolean leaf;
+    final List<String> keys;
+    final List<byte[]> values;
+    final List<Integer> children;
+    int next = NO_PAGE;
+
+    private Node(int pageId, boolean leaf, int capacity) {
+        this.pageId = pageId;
+        this.leaf = leaf;
+        this.keys = new ArrayList<>(capacity);
+        this.values = leaf ? new ArrayList<>(capacity) : Collections.emptyList();
+        this.children = leaf ? Collections.emptyList() : new ArrayList<>(capacity + 1);
+    }
+
+    static Node newLeaf(int pageId) {
+        return new Node(pageId, true, 16);
+    }
+
+    static Node newInternal(int pageId) {
+        return new Node(pageId, false, 16);
+    }
+
+    int search(String key) {
+        return Collections.binarySearch(keys, key);
+    }
+
+    int childIndex(String key) {
+        int idx = search(key);
+        return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    int entrySize(int idx) {
+        int keySize = 2 + keyLength(keys.get(idx));
+        return leaf ? keySize + 2 + values.get(idx).length : keySize + 4;
+    }
+
+    int byteSize() {
+        int size = HEADER_SIZE;
+        for (int i = 0; i < keys.size(); i++) {
+            size += entrySize(i);
+        }
+        return size;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.put(leaf ? LEAF : INTERNAL);
+        buffer.putShort((short) keys.size());
+        buffer.putInt(leaf ? next : children.get(0));
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i).getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) key.length);
+            buffer.put(key);
+            if (leaf) {
+                buffer.putShort((short) values.get(i).length);
+                buffer.put(values.get(i));
+            } else {
+                buffer.putInt(children.get(i + 1));
+            }
+        }
+    }
+
+    static Node readFrom(int pageId, ByteBuffer buffer) {
+        boolean leaf = buffer.get() == LEAF;
+        int count = buffer.getShort() & 0xFFFF;
+        Node node = new Node(pageId, leaf, count);
+        if (leaf) {
+            node.next = buffer.getInt();
+        } else {
+            node.children.add(buffer.getInt());
+        }
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(key);
+            node.keys.add(new String(key, StandardCharsets.UTF_8));
+            if (leaf) {
+                byte[] value = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(value);
+                node.values.add(value);
+            } else {
+                node.children.add(buffer.getInt());
+            }
+        }
+        return node;
+    }
+
+    static int keyLength(String key) {
+        return key.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
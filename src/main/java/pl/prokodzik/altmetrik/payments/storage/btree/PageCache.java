@@ -0,0 +1,129 @@
+package pl.prokodzik.altmetrik.payments.storage.btree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded LRU cache of decoded pages on top of a {@link FileChannel}.
+ * Dirty pages are written back when evicted or on {@link #flush()}. Nodes which outgrew their page are waiting
+ * for a split and are not evicted until it is done.
+ */
+class PageCache {
+
+    static final int PAGE_SIZE = 4096;
+
+    private final FileChannel channel;
+    private final Map<Integer, Node> pages;
+    private final Set<Integer> dirty = new HashSet<>();
+    private int pageCount;
+    private long hits;
+    private long reads;
+    private long writes;
+
+    PageCache(final FileChannel channel, final int capacity, final int pageCount) {
+        this.channel = channel;
+        this.pageCount = pageCount;
+        this.pages = new LinkedHashMap<>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Node> eldest) {
+                if (size() <= capacity || eldest.getValue().byteSize() > PAGE_SIZE) {
+                    return false;
+                }
+                if (dirty.remove(eldest.getKey())) {
+                    try {
+                        write(eldest.getValue());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    Node get(final int pageId) throws IOException {
+        Node node = pages.get(pageId);
+        if (node != null) {
+            hits++;
+            return node;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        long offset = position(pageId);
+        while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+            // keep reading until the whole page is in
+        }
+        buffer.flip();
+        reads++;
+        node = Node.readFrom(pageId, buffer);
+        put(node);
+        return node;
+    }
+
+    Node allocate(final boolean leaf) throws IOException {
+        int pageId = pageCount++;
+        Node node = leaf ? Node.newLeaf(pageId) : Node.newInternal(pageId);
+        markDirty(node);
+        return node;
+    }
+
+    void markDirty(final Node node) throws IOException {
+        dirty.add(node.pageId);
+        put(node);
+    }
+
+    void flush() throws IOException {
+        for (Integer pageId : dirty) {
+            write(pages.get(pageId));
+        }
+        dirty.clear();
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getReads() {
+        return reads;
+    }
+
+    long getWrites() {
+        return writes;
+    }
+
+    static long position(final int pageId) {
+        return (long) pageId * PAGE_SIZE;
+    }
+
+    private void put(final Node node) throws IOException {
+        try {
+            pages.put(node.pageId, node);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void write(final Node node) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        node.writeTo(buffer);
+        buffer.position(0);
+        writeFully(buffer, position(node.pageId));
+        writes++;
+    }
+
+    void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package pl.prokodzik.altmetrik.payments.storage.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.exceptions.StorageException;
+import pl.prokodzik.altmetrik.payments.storage.ForwardingRepository;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps payments of the decorated repository in skip lists ordered by amount, one over all payments and one per
+ * currency, so the largest or smallest payments in an amount range are found in O(log n + limit).
+ * <p>
+ * Writes go through the delegate first and are applied to the index in the same order, under a write lock.
+ * Reads walk the skip lists without locking and validate an optimistic stamp afterwards, they are repeated
+ * under the read lock only if a write changed the index meanwhile. A read never sees an update half applied.
+ * The index is built once the delegate is fully loaded, until then reads are served by the delegate.
+ * Payments the delegate removes by itself, like expired time partitions, are reported by its removal listener.
+ */
+public class AmountIndexedRepository extends ForwardingRepository {
+
+    private final ConcurrentSkipListSet<StorablePayment> byAmount = new ConcurrentSkipListSet<>(AMOUNT_ORDER);
+    private final Map<Currency, ConcurrentSkipListSet<StorablePayment>> byCurrency = new ConcurrentHashMap<>();
+    private final Map<String, StorablePayment> indexed = new ConcurrentHashMap<>();
+    private final StampedLock lock = new StampedLock();
+    private final AtomicLong lockedReads = new AtomicLong();
+    private final AtomicLong removals = new AtomicLong();
+    private volatile boolean built;
+    private final Logger logger = LoggerFactory.getLogger(AmountIndexedRepository.class);
+
+    public AmountIndexedRepository(final Repository<StorablePayment, String> repository) {
+        super(repository);
+        delegate.addRemovalListener(this::removed);
+        build();
+    }
+
+    @Override
+    public synchronized StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+        StorablePayment saved = delegate.save(storablePayment);
+        if (saved != null && build()) {
+            apply(List.of(saved), List.of());
+        }
+        return saved;
+    }
+
+    @Override
+    public synchronized StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        StorablePayment updated = delegate.update(storablePayment);
+        if (updated != null && build()) {
+            apply(List.of(updated), List.of());
+        }
+        return updated;
+    }
+
+    @Override
+    public synchronized void delete(final String id) throws PaymentNotFoundException {
+        delegate.delete(id);
+        if (build()) {
+            apply(List.of(), List.of(id));
+        }
+    }
+
+    @Override
+    public synchronized List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        List<StorablePayment> updated;
+        try {
+            updated = delegate.updateWhere(filter, change);
+        } catch (StorageException e) {
+            rebuild();
+            throw e;
+        }
+        if (build()) {
+            apply(updated, List.of());
+        }
+        return updated;
+    }
+
+    @Override
+    public synchronized List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        List<String> deleted;
+        try {
+            deleted = delegate.deleteWhere(filter);
+        } catch (StorageException e) {
+            rebuild();
+            throw e;
+        }
+        if (build()) {
+            apply(List.of(), deleted);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<StorablePayment> getSortedByAmount(final Currency currency, final long minAmount, final long maxAmount, final boolean descending, final int limit) {
+        if (!built && !build()) {
+            return delegate.getSortedByAmount(currency, minAmount, maxAmount, descending, limit);
+        }
+        delegate.removeExpired();
+        long stamp = lock.tryOptimisticRead();
+        List<StorablePayment> sorted = collect(currency, minAmount, maxAmount, descending, limit);
+        if (!lock.validate(stamp)) {
+            lockedReads.incrementAndGet();
+            stamp = lock.readLock();
+            try {
+                sorted = collect(currency, minAmount, maxAmount, descending, limit);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return sorted;
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>(delegate.getMetrics());
+        metrics.put("amountIndexed", indexed.size());
+        metrics.put("amountIndexCurrencies", byCurrency.size());
+        metrics.put("amountIndexLockedReads", lockedReads.get());
+        return metrics;
+    }
+
+    private synchronized boolean build() {
+        if (built) {
+            return true;
+        }
+        if (!delegate.isFullyLoaded()) {
+            return false;
+        }
+        long removalsBefore;
+        do {
+            removalsBefore = removals.get();
+            List<StorablePayment> all = delegate.getAll();
+            if (all == null) {
+                return false;
+            }
+            clear();
+            apply(all, List.of());
+        } while (removals.get() != removalsBefore);
+        built = true;
+        logger.info("Indexed {} payments by amount", indexed.size());
+        return true;
+    }
+
+    /**
+     * A failed bulk change may still have been applied to some payments, which ones is unknown, so the index is
+     * built again from the delegate on the next access.
+     */
+    private void rebuild() {
+        built = false;
+    }
+
+    /**
+     * Called by the delegate, possibly while building the index from a listing which still has the removed payments,
+     * in which case the index is built again.
+     */
+    private void removed(final Collection<String> ids) {
+        removals.incrementAndGet();
+        apply(List.of(), ids);
+    }
+
+    private void clear() {
+        long stamp = lock.writeLock();
+        try {
+            indexed.clear();
+            byAmount.clear();
+            byCurrency.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void apply(final List<StorablePayment> changed, final Collection<String> removed) {
+        long stamp = lock.writeLock();
+        try {
+            for (StorablePayment payment : changed) {
+                StorablePayment old = payment.getAmount() == null ? indexed.remove(payment.getId()) : indexed.put(payment.getId(), payment);
+                if (old != null) {
+                    unlink(old);
+                }
+                if (payment.getAmount() != null) {
+                    link(payment);
+                }
+            }
+            for (String id : removed) {
+                StorablePayment old = indexed.remove(id);
+                if (old != null) {
+                    unlink(old);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void link(final StorablePayment payment) {
+        byAmount.add(payment);
+        if (payment.getCurrency() != null) {
+            byCurrency.computeIfAbsent(payment.getCurrency(), currency -> new ConcurrentSkipListSet<>(AMOUNT_ORDER)).add(payment);
+        }
+    }
+
+    private void unlink(final StorablePayment payment) {
+        byAmount.remove(payment);
+        if (payment.getCurrency() != null) {
+            NavigableSet<StorablePayment> payments = byCurrency.get(payment.getCurrency());
+            if (payments != null) {
+                payments.remove(payment);
+            }
+        }
+    }
+
+    private List<StorablePayment> collect(final Currency currency, final long minAmount, final long maxAmount, final boolean descending, final int limit) {
+        List<StorablePayment> sorted = new ArrayList<>();
+        NavigableSet<StorablePayment> payments = currency == null ? byAmount : byCurrency.get(currency);
+        if (payments == null || minAmount > maxAmount) {
+            return sorted;
+        }
+        if (minAmount != Long.MIN_VALUE) {
+            payments = payments.tailSet(lowest(minAmount), true);
+        }
+        if (maxAmount != Long.MAX_VALUE) {
+            payments = payments.headSet(lowest(maxAmount + 1), false);
+        }
+        for (StorablePayment payment : descending ? payments.descendingSet() : payments) {
+            if (sorted.size() >= limit) {
+                break;
+            }
+            sorted.add(payment);
+        }
+        return sorted;
+    }
+
+    /**
+     * Key ordered before every payment with the given amount.
+     */
+    private static StorablePayment lowest(final long amount) {
+        return StorablePayment.builder().amount(amount).id("").build();
+    }
+}
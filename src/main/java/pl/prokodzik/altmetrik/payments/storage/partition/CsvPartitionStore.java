@@ -0,0 +1,74 @@
+package pl.prokodzik.altmetrik.payments.storage.partition;
+
+import pl.prokodzik.altmetrik.payments.storage.CsvMapper;
+import pl.prokodzik.altmetrik.payments.storage.CsvRecovery;
+import pl.prokodzik.altmetrik.payments.storage.CsvRepository;
+import pl.prokodzik.altmetrik.payments.storage.Durability;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Every partition is a separate CSV file in one directory, so updates and deletes rewrite only the file of their
+ * partition and dropping a partition is deleting its file.
+ */
+public class CsvPartitionStore implements PartitionStore {
+
+    private static final Pattern PARTITION_FILE = Pattern.compile("partition-(-?\\d+)\\.csv");
+
+    private final File directory;
+    private final CsvMapper csvMapper;
+    private final Durability durability;
+
+    public CsvPartitionStore(final File directory, final CsvMapper mapper, final Durability fileDurability) throws IOException {
+        this.directory = directory;
+        csvMapper = mapper;
+        durability = fileDurability;
+        Files.createDirectories(directory.toPath());
+    }
+
+    @Override
+    public List<Long> existing() {
+        List<Long> starts = new ArrayList<>();
+        String[] names = directory.list();
+        if (names == null) {
+            return starts;
+        }
+        for (String name : names) {
+            Matcher matcher = PARTITION_FILE.matcher(name);
+            if (matcher.matches()) {
+                starts.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        starts.sort(null);
+        return starts;
+    }
+
+    @Override
+    public Repository<StorablePayment, String> open(final long start, final Supplier<String> idSupplier) throws IOException {
+        File file = file(start);
+        if (!file.exists()) {
+            file.createNewFile();
+        }
+        CsvRepository repository = new CsvRepository(idSupplier, csvMapper, file, durability, new CsvRecovery(csvMapper));
+        repository.warmUp();
+        return repository;
+    }
+
+    @Override
+    public void drop(final long start, final Repository<StorablePayment, String> partition) throws IOException {
+        Files.deleteIfExists(file(start).toPath());
+    }
+
+    private File file(final long start) {
+        return new File(directory, "partition-" + start + ".csv");
+    }
+}
@@ -0,0 +1,25 @@
+package pl.prokodzik.altmetrik.payments.storage.partition;
+
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.SnapshotRepository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+public class MemoryPartitionStore implements PartitionStore {
+
+    @Override
+    public List<Long> existing() {
+        return List.of();
+    }
+
+    @Override
+    public Repository<StorablePayment, String> open(final long start, final Supplier<String> idSupplier) {
+        return new SnapshotRepository(idSupplier);
+    }
+
+    @Override
+    public void drop(final long start, final Repository<StorablePayment, String> partition) {
+    }
+}
@@ -0,0 +1,26 @@
+package pl.prokodzik.altmetrik.payments.storage.partition;
+
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Storage of the partitions of a {@link TimePartitionedRepository}, each identified by the start of its time range.
+ */
+public interface PartitionStore {
+
+    /**
+     * Starts of partitions kept from previous runs.
+     */
+    List<Long> existing() throws IOException;
+
+    Repository<StorablePayment, String> open(long start, Supplier<String> idSupplier) throws IOException;
+
+    /**
+     * Removes the whole partition at once, without touching its payments one by one.
+     */
+    void drop(long start, Repository<StorablePayment, String> partition) throws IOException;
+}
@@ -0,0 +1,392 @@
+package pl.prokodzik.altmetrik.payments.storage.partition;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Payments split by creation time into partitions of equal length, kept in a skip list by their start.
+ * Range queries read only the partitions overlapping the range. Partitions older than the retention
+ * period are dropped as a whole: unlinked from the skip list and removed from the {@link PartitionStore}
+ * at once. Ids of a dropped partition are purged from the id index a batch at a time on later writes,
+ * until then lookups recognise them by the dropped flag of their partition.
+ */
+public class TimePartitionedRepository extends Repository<StorablePayment, String> implements Closeable {
+
+    private static final int PURGE_BATCH = 256;
+    private static final int BULK_THREADS = 4;
+
+    private final ConcurrentSkipListMap<Long, Partition> partitions = new ConcurrentSkipListMap<>();
+    private final Map<String, Partition> index = new ConcurrentHashMap<>();
+    private final Deque<Partition> purging = new ArrayDeque<>();
+    private final PartitionStore store;
+    private final Clock clock;
+    private final long partitionMillis;
+    private final long retentionMillis;
+    private final AtomicLong droppedPartitions = new AtomicLong();
+    private final AtomicInteger lastRangePartitions = new AtomicInteger();
+    private final List<Consumer<Collection<String>>> removalListeners = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor bulkExecutor = new ThreadPoolExecutor(BULK_THREADS, BULK_THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "partition-bulk");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Logger logger = LoggerFactory.getLogger(TimePartitionedRepository.class);
+
+    /**
+     * @param retention how long payments are kept, zero keeps them forever
+     */
+    public TimePartitionedRepository(final Supplier<String> idSupplier, final PartitionStore partitionStore, final Clock clock,
+                                     final Duration partitionLength, final Duration retention) throws IOException {
+        super(idSupplier);
+        bulkExecutor.allowCoreThreadTimeOut(true);
+        store = partitionStore;
+        this.clock = clock;
+        partitionMillis = partitionLength.toMillis();
+        retentionMillis = retention.toMillis();
+        if (partitionMillis <= 0) {
+            throw new IllegalArgumentException("Partition length has to be positive");
+        }
+        for (long start : store.existing()) {
+            Partition partition = new Partition(start, store.open(start, this::supplyUniqueId));
+            partitions.put(start, partition);
+            for (StorablePayment payment : partition.repository.getAll()) {
+                partition.ids.add(payment.getId());
+                index.put(payment.getId(), partition);
+            }
+        }
+        dropExpired();
+    }
+
+    @Override
+    public synchronized StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+        purgeDroppedIds();
+        dropExpired();
+        String uniqueId = storablePayment.getId();
+        if (uniqueId == null) {
+            uniqueId = this.supplyUniqueId();
+        }
+        if (live(index.get(uniqueId)) != null) {
+            throw new PaymentAlreadyExistsException("Payment already exists");
+        }
+        long createdAt = storablePayment.getCreatedAt() != null ? storablePayment.getCreatedAt() : clock.millis();
+        StorablePayment build = StorablePayment.builder().accountNumber(storablePayment.getAccountNumber())
+                .amount(storablePayment.getAmount()).currency(storablePayment.getCurrency())
+                .userId(storablePayment.getUserId()).createdAt(createdAt).id(uniqueId).build();
+        try {
+            Partition partition = partitionOf(createdAt);
+            StorablePayment saved = partition.repository.save(build);
+            if (saved != null) {
+                partition.ids.add(uniqueId);
+                index.put(uniqueId, partition);
+            }
+            return saved;
+        } catch (IOException e) {
+            logger.error("Could not open partition for {}", createdAt, e);
+            return null;
+        }
+    }
+
+    /**
+     * Creation time of a payment does not change, the payment stays in its partition.
+     */
+    @Override
+    public synchronized StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        purgeDroppedIds();
+        Partition partition = live(index.get(storablePayment.getId()));
+        if (partition == null) {
+            throw new PaymentNotFoundException("Payment not found");
+        }
+        Long createdAt = storablePayment.getCreatedAt();
+        if (createdAt == null || partitionStart(createdAt) != partition.start) {
+            createdAt = partition.repository.getById(storablePayment.getId()).map(StorablePayment::getCreatedAt).orElse(partition.start);
+        }
+        return partition.repository.update(StorablePayment.builder().accountNumber(storablePayment.getAccountNumber())
+                .amount(storablePayment.getAmount()).currency(storablePayment.getCurrency())
+                .userId(storablePayment.getUserId()).createdAt(createdAt).id(storablePayment.getId()).build());
+    }
+
+    @Override
+    public synchronized void delete(final String id) throws PaymentNotFoundException {
+        purgeDroppedIds();
+        Partition partition = live(index.get(id));
+        if (partition == null) {
+            throw new PaymentNotFoundException("Payment not found");
+        }
+        partition.repository.delete(id);
+        partition.ids.remove(id);
+        index.remove(id);
+    }
+
+    /**
+     * Runs the bulk change on all partitions in parallel, each partition in a single pass of its own.
+     * The change has to keep the creation time, so payments stay in their partitions.
+     */
+    @Override
+    public synchronized List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        purgeDroppedIds();
+        return onAllPartitions(partition -> partition.repository.updateWhere(filter, change));
+    }
+
+    @Override
+    public synchronized List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        purgeDroppedIds();
+        return onAllPartitions(partition -> {
+            List<String> deleted = partition.repository.deleteWhere(filter);
+            for (String id : deleted) {
+                partition.ids.remove(id);
+                index.remove(id, partition);
+            }
+            return deleted;
+        });
+    }
+
+    @Override
+    public Optional<StorablePayment> getById(final String id) {
+        Partition partition = live(index.get(id));
+        return partition == null ? Optional.empty() : partition.repository.getById(id);
+    }
+
+    @Override
+    public List<StorablePayment> getAll() {
+        dropExpired();
+        List<StorablePayment> all = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            addAll(all, partition.repository.getAll());
+        }
+        return all;
+    }
+
+    @Override
+    public List<StorablePayment> getCreatedBetween(final long from, final long to) {
+        dropExpired();
+        List<StorablePayment> range = new ArrayList<>();
+        if (from >= to) {
+            return range;
+        }
+        Long first = partitions.floorKey(from);
+        long start = first != null && from - first < partitionMillis ? first : from;
+        int scanned = 0;
+        for (Partition partition : partitions.subMap(start, true, to, false).values()) {
+            scanned++;
+            List<StorablePayment> payments = partition.repository.getAll();
+            boolean inside = partition.start >= from && to - partition.start >= partitionMillis;
+            if (inside) {
+                addAll(range, payments);
+                continue;
+            }
+            for (StorablePayment payment : payments == null ? List.<StorablePayment>of() : payments) {
+                if (payment.getCreatedAt() >= from && payment.getCreatedAt() < to) {
+                    range.add(payment);
+                }
+            }
+        }
+        lastRangePartitions.set(scanned);
+        range.sort(Comparator.comparing(StorablePayment::getCreatedAt));
+        return range;
+    }
+
+    /**
+     * Drops every partition which ends before {@code cutoff} epoch millis.
+     *
+     * @return number of dropped partitions
+     */
+    public synchronized int dropBefore(final long cutoff) {
+        int dropped = 0;
+        Map.Entry<Long, Partition> oldest;
+        while ((oldest = partitions.firstEntry()) != null && cutoff - oldest.getKey() >= partitionMillis) {
+            Partition partition = oldest.getValue();
+            partitions.remove(oldest.getKey());
+            partition.dropped = true;
+            purging.add(partition);
+            for (Consumer<Collection<String>> listener : removalListeners) {
+                listener.accept(partition.ids);
+            }
+            try {
+                store.drop(partition.start, partition.repository);
+            } catch (IOException e) {
+                logger.error("Could not remove partition {}", partition.start, e);
+            }
+            dropped++;
+        }
+        if (dropped > 0) {
+            droppedPartitions.addAndGet(dropped);
+            logger.info("Dropped {} partitions created before {}", dropped, cutoff);
+        }
+        return dropped;
+    }
+
+    /**
+     * Listeners get ids of every dropped partition.
+     */
+    @Override
+    public void addRemovalListener(final Consumer<Collection<String>> listener) {
+        removalListeners.add(listener);
+    }
+
+    @Override
+    public void removeExpired() {
+        dropExpired();
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map.Entry<Long, Partition> oldest = partitions.firstEntry();
+        return Map.of(
+                "partitions", partitions.size(),
+                "oldestPartition", oldest == null ? -1L : oldest.getKey(),
+                "droppedPartitions", droppedPartitions.get(),
+                "lastRangePartitions", lastRangePartitions.get());
+    }
+
+    @Override
+    public void close() throws IOException {
+        bulkExecutor.shutdown();
+        for (Partition partition : partitions.values()) {
+            if (partition.repository instanceof Closeable) {
+                ((Closeable) partition.repository).close();
+            }
+        }
+    }
+
+    /**
+     * Partitions are rewritten on a few threads of this repository, blocking file I/O doesn't belong to the common
+     * fork-join pool shared by all parallel streams. Returns only once every partition is done, and fails with the
+     * first failure of any of them.
+     */
+    private <T> List<T> onAllPartitions(final Function<Partition, List<T>> change) {
+        List<Future<List<T>>> futures = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            futures.add(bulkExecutor.submit(() -> change.apply(partition)));
+        }
+        List<T> results = new ArrayList<>();
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<List<T>> future : futures) {
+            while (true) {
+                try {
+                    results.addAll(future.get());
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return results;
+    }
+
+    long partitionStart(final long createdAt) {
+        return Math.floorDiv(createdAt, partitionMillis) * partitionMillis;
+    }
+
+    private Partition partitionOf(final long createdAt) throws IOException {
+        long start = partitionStart(createdAt);
+        Partition partition = partitions.get(start);
+        if (partition == null) {
+            partition = new Partition(start, store.open(start, this::supplyUniqueId));
+            partitions.put(start, partition);
+        }
+        return partition;
+    }
+
+    private void dropExpired() {
+        if (retentionMillis <= 0) {
+            return;
+        }
+        long cutoff = clock.millis() - retentionMillis;
+        Long oldest = partitions.isEmpty() ? null : partitions.firstKey();
+        if (oldest != null && cutoff - oldest >= partitionMillis) {
+            dropBefore(cutoff);
+        }
+    }
+
+    private void purgeDroppedIds() {
+        int budget = PURGE_BATCH;
+        while (budget > 0 && !purging.isEmpty()) {
+            Partition partition = purging.peek();
+            if (partition.purge == null) {
+                partition.purge = partition.ids.iterator();
+            }
+            while (budget > 0 && partition.purge.hasNext()) {
+                index.remove(partition.purge.next(), partition);
+                budget--;
+            }
+            if (!partition.purge.hasNext()) {
+                purging.poll();
+            }
+        }
+    }
+
+    private static Partition live(final Partition partition) {
+        return partition == null || partition.dropped ? null : partition;
+    }
+
+    private static void addAll(final List<StorablePayment> target, final List<StorablePayment> payments) {
+        if (payments != null) {
+            target.addAll(payments);
+        }
+    }
+
+    private static final class Partition {
+        private final long start;
+        private final Repository<StorablePayment, String> repository;
+        private final Set<String> ids = ConcurrentHashMap.newKeySet();
+        private volatile boolean dropped;
+        private Iterator<String> purge;
+
+        private Partition(final long start, final Repository<StorablePayment, String> repository) {
+            this.start = start;
+            this.repository = repository;
+        }
+    }
+}
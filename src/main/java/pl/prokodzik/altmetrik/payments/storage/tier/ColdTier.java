@@ -0,0 +1,327 @@
+package pl.prokodzik.altmetrik.payments.storage.tier;
+
+import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Demoted payments, kept in append only segment files. Payments are grouped in blocks compressed with
+ * Deflate and located through an in-memory index, so reading a cold payment costs one positional read
+ * and inflating one block. Segments are deleted once none of their payments is live anymore, and compacted by
+ * moving their live payments to the current segment once less than half of them is live.
+ * Not thread safe, guarded by the owning repository.
+ */
+class ColdTier implements Closeable {
+
+    private static final double MIN_LIVE_RATIO = 0.5;
+
+    private final File directory;
+    private final BinaryMapper binaryMapper;
+    private final int blockRecords;
+    private final long segmentBytes;
+    private final Map<String, Block> index = new HashMap<>();
+    private final Map<String, StorablePayment> pendingBlock = new LinkedHashMap<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private final List<Segment> segments = new ArrayList<>();
+    private final Set<Segment> sparse = new LinkedHashSet<>();
+    private Segment current;
+    private int nextSegmentId;
+    private long blockReads;
+    private long compactions;
+
+    ColdTier(final File dir, final BinaryMapper mapper, final int recordsPerBlock, final long maxSegmentBytes) throws IOException {
+        directory = dir;
+        binaryMapper = mapper;
+        blockRecords = recordsPerBlock;
+        segmentBytes = maxSegmentBytes;
+        clear();
+        current = newSegment();
+    }
+
+    boolean contains(final String id) {
+        return pendingBlock.containsKey(id) || index.containsKey(id);
+    }
+
+    int size() {
+        return pendingBlock.size() + index.size();
+    }
+
+    StorablePayment get(final String id) throws IOException, DataCorruptionException {
+        StorablePayment pending = pendingBlock.get(id);
+        if (pending != null) {
+            return pending;
+        }
+        Block block = index.get(id);
+        if (block == null) {
+            return null;
+        }
+        for (StorablePayment payment : read(block)) {
+            if (id.equals(payment.getId())) {
+                return payment;
+            }
+        }
+        throw new DataCorruptionException("Payment " + id + " missing from its block in " + block.segment.file);
+    }
+
+    void put(final StorablePayment payment) throws IOException {
+        discard(payment.getId());
+        pendingBlock.put(payment.getId(), payment);
+        if (pendingBlock.size() >= blockRecords) {
+            try {
+                flushBlock();
+            } catch (IOException e) {
+                pendingBlock.remove(payment.getId());
+                throw e;
+            }
+        }
+    }
+
+    boolean discard(final String id) {
+        if (pendingBlock.remove(id) != null) {
+            return true;
+        }
+        Block block = index.remove(id);
+        if (block == null) {
+            return false;
+        }
+        Segment segment = block.segment;
+        segment.live--;
+        if (segment != current) {
+            sealed(segment);
+        }
+        return true;
+    }
+
+    /**
+     * Moves live payments of sparse segments to the current segment and deletes the sparse ones.
+     */
+    void compact() throws IOException, DataCorruptionException {
+        while (!sparse.isEmpty()) {
+            Segment segment = sparse.iterator().next();
+            sparse.remove(segment);
+            for (Block block : segment.blocks) {
+                for (StorablePayment payment : read(block)) {
+                    if (index.get(payment.getId()) == block) {
+                        index.remove(payment.getId());
+                        segment.live--;
+                        pendingBlock.put(payment.getId(), payment);
+                        if (pendingBlock.size() >= blockRecords) {
+                            flushBlock();
+                        }
+                    }
+                }
+            }
+            segments.remove(segment);
+            segment.delete();
+            compactions++;
+        }
+    }
+
+    List<StorablePayment> getAll() throws IOException, DataCorruptionException {
+        List<StorablePayment> all = new ArrayList<>(pendingBlock.values());
+        Map<Block, Boolean> visited = new IdentityHashMap<>();
+        for (Block block : index.values()) {
+            if (visited.put(block, Boolean.TRUE) == null) {
+                for (StorablePayment payment : read(block)) {
+                    if (index.get(payment.getId()) == block) {
+                        all.add(payment);
+                    }
+                }
+            }
+        }
+        return all;
+    }
+
+    long getBlockReads() {
+        return blockReads;
+    }
+
+    long getCompactions() {
+        return compactions;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    long getBytesOnDisk() {
+        return segments.stream().mapToLong(segment -> segment.size).sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        deflater.end();
+        inflater.end();
+    }
+
+    private void flushBlock() throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(raw);
+        out.writeInt(pendingBlock.size());
+        for (StorablePayment payment : pendingBlock.values()) {
+            binaryMapper.write(out, payment);
+        }
+        byte[] compressed = compress(raw.toByteArray());
+        if (current.size > 0 && current.size + compressed.length > segmentBytes) {
+            Segment previous = current;
+            current = newSegment();
+            sealed(previous);
+        }
+        Block block = new Block(current, current.size, compressed.length, raw.size());
+        ByteBuffer buffer = ByteBuffer.wrap(compressed);
+        while (buffer.hasRemaining()) {
+            current.channel.write(buffer, block.offset + buffer.position());
+        }
+        current.size += compressed.length;
+        current.live += pendingBlock.size();
+        current.written += pendingBlock.size();
+        current.blocks.add(block);
+        for (String id : pendingBlock.keySet()) {
+            index.put(id, block);
+        }
+        pendingBlock.clear();
+    }
+
+    private void sealed(final Segment segment) {
+        if (segment.live == 0) {
+            sparse.remove(segment);
+            segments.remove(segment);
+            segment.delete();
+        } else if (segment.live < segment.written * MIN_LIVE_RATIO) {
+            sparse.add(segment);
+        }
+    }
+
+    private List<StorablePayment> read(final Block block) throws IOException, DataCorruptionException {
+        blockReads++;
+        ByteBuffer buffer = ByteBuffer.allocate(block.length);
+        while (buffer.hasRemaining()) {
+            if (block.segment.channel.read(buffer, block.offset + buffer.position()) < 0) {
+                throw new DataCorruptionException("Block at " + block.offset + " in " + block.segment.file + " is truncated");
+            }
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(decompress(buffer.array(), block.rawLength)));
+        int count = in.readInt();
+        List<StorablePayment> payments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            payments.add(binaryMapper.read(in));
+        }
+        return payments;
+    }
+
+    private byte[] compress(final byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 16);
+        byte[] chunk = new byte[4096];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return compressed.toByteArray();
+    }
+
+    private byte[] decompress(final byte[] compressed, final int rawLength) throws DataCorruptionException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLength];
+        try {
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(raw, inflated, rawLength - inflated);
+                if (read == 0 && inflater.needsInput()) {
+                    break;
+                }
+                inflated += read;
+            }
+            if (inflated != rawLength) {
+                throw new DataCorruptionException("Block inflated to " + inflated + " bytes, expected " + rawLength);
+            }
+        } catch (DataFormatException e) {
+            throw new DataCorruptionException("Block is not valid deflate data. " + e.getLocalizedMessage());
+        }
+        return raw;
+    }
+
+    private Segment newSegment() throws IOException {
+        File file = new File(directory, String.format("segment-%06d.cold", nextSegmentId++));
+        Segment segment = new Segment(file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segments.add(segment);
+        return segment;
+    }
+
+    private void clear() throws IOException {
+        Files.createDirectories(directory.toPath());
+        File[] stale = directory.listFiles((dir, name) -> name.endsWith(".cold"));
+        if (stale != null) {
+            for (File file : stale) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final FileChannel channel;
+        private final List<Block> blocks = new ArrayList<>();
+        private long size;
+        private int live;
+        private int written;
+
+        private Segment(final File file, final FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        private void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private static final class Block {
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private final int rawLength;
+
+        private Block(final Segment segment, final long offset, final int length, final int rawLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+        }
+    }
+}
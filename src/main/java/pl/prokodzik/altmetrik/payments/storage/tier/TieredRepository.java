@@ -0,0 +1,204 @@
+package pl.prokodzik.altmetrik.payments.storage.tier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory repository with bounded heap usage. At most {@code hotCapacity} recently accessed payments
+ * are kept on heap, least recently used ones are demoted to the compressed cold tier on disk and promoted
+ * back when accessed. Cold tier is a spill area, not a durable store: it is cleared on startup.
+ */
+public class TieredRepository extends Repository<StorablePayment, String> implements Closeable {
+
+    public static final int DEFAULT_BLOCK_RECORDS = 64;
+    public static final long DEFAULT_SEGMENT_BYTES = 4L * 1024 * 1024;
+
+    private final int hotCapacity;
+    private final Map<String, StorablePayment> hot = new LinkedHashMap<>(16, 0.75f, true);
+    private final ColdTier cold;
+    private final Logger logger = LoggerFactory.getLogger(TieredRepository.class);
+    private long hotHits;
+    private long coldHits;
+    private long misses;
+    private long demotions;
+    private long promotions;
+
+    public TieredRepository(final Supplier<String> idSupplier, final BinaryMapper mapper, final File spillDirectory, final int hotCapacity) throws IOException {
+        this(idSupplier, mapper, spillDirectory, hotCapacity, DEFAULT_BLOCK_RECORDS, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public TieredRepository(final Supplier<String> idSupplier, final BinaryMapper mapper, final File spillDirectory, final int hotCapacity,
+                            final int blockRecords, final long segmentBytes) throws IOException {
+        super(idSupplier);
+        if (hotCapacity < 1) {
+            throw new IllegalArgumentException("Hot tier capacity has to be positive, got " + hotCapacity);
+        }
+        this.hotCapacity = hotCapacity;
+        cold = new ColdTier(spillDirectory, mapper, blockRecords, segmentBytes);
+    }
+
+    @Override
+    public synchronized StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+        String uniqueId = storablePayment.getId();
+        if (uniqueId == null) {
+            uniqueId = this.supplyUniqueId();
+        }
+        if (hot.containsKey(uniqueId) || cold.contains(uniqueId)) {
+            throw new PaymentAlreadyExistsException("Payment already exists");
+        }
+        StorablePayment build = StorablePayment.builder().accountNumber(storablePayment.getAccountNumber())
+                .amount(storablePayment.getAmount()).currency(storablePayment.getCurrency())
+                .userId(storablePayment.getUserId()).createdAt(storablePayment.getCreatedAt()).id(uniqueId).build();
+        putHot(build);
+        return build;
+    }
+
+    @Override
+    public synchronized StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        String storablePaymentId = storablePayment.getId();
+        if (hot.containsKey(storablePaymentId)) {
+            hot.put(storablePaymentId, storablePayment);
+            return storablePayment;
+        }
+        if (!cold.discard(storablePaymentId)) {
+            throw new PaymentNotFoundException("Payment not found");
+        }
+        promotions++;
+        putHot(storablePayment);
+        compactCold();
+        return storablePayment;
+    }
+
+    @Override
+    public synchronized void delete(final String id) throws PaymentNotFoundException {
+        if (hot.remove(id) == null) {
+            if (!cold.discard(id)) {
+                throw new PaymentNotFoundException("Payment not found");
+            }
+            compactCold();
+        }
+    }
+
+    @Override
+    public synchronized Optional<StorablePayment> getById(final String id) {
+        StorablePayment payment = hot.get(id);
+        if (payment != null) {
+            hotHits++;
+            return Optional.of(payment);
+        }
+        try {
+            payment = cold.get(id);
+        } catch (IOException | DataCorruptionException e) {
+            logger.error("Cold tier reading exception", e);
+            return Optional.empty();
+        }
+        if (payment == null) {
+            misses++;
+            return Optional.empty();
+        }
+        coldHits++;
+        promotions++;
+        cold.discard(id);
+        putHot(payment);
+        compactCold();
+        return Optional.of(payment);
+    }
+
+    @Override
+    public synchronized List<StorablePayment> getAll() {
+        List<StorablePayment> all = new ArrayList<>(hot.size() + cold.size());
+        all.addAll(hot.values());
+        try {
+            all.addAll(cold.getAll());
+        } catch (IOException | DataCorruptionException e) {
+            logger.error("Cold tier reading exception", e);
+        }
+        return all;
+    }
+
+    /**
+     * Applies the bulk change under the repository lock, so other writes see it as a whole.
+     */
+    @Override
+    public synchronized List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        return super.updateWhere(filter, change);
+    }
+
+    @Override
+    public synchronized List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        return super.deleteWhere(filter);
+    }
+
+    @Override
+    public synchronized Map<String, Object> getMetrics() {
+        long lookups = hotHits + coldHits + misses;
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("hotSize", hot.size());
+        metrics.put("hotCapacity", hotCapacity);
+        metrics.put("coldSize", cold.size());
+        metrics.put("coldSegments", cold.getSegmentCount());
+        metrics.put("coldBytes", cold.getBytesOnDisk());
+        metrics.put("coldBlockReads", cold.getBlockReads());
+        metrics.put("coldCompactions", cold.getCompactions());
+        metrics.put("hotHits", hotHits);
+        metrics.put("coldHits", coldHits);
+        metrics.put("misses", misses);
+        metrics.put("hotHitRate", lookups == 0 ? 0.0 : (double) hotHits / lookups);
+        metrics.put("coldHitRate", lookups == 0 ? 0.0 : (double) coldHits / lookups);
+        metrics.put("demotions", demotions);
+        metrics.put("promotions", promotions);
+        return metrics;
+    }
+
+    public synchronized int size() {
+        return hot.size() + cold.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        cold.close();
+    }
+
+    private void compactCold() {
+        try {
+            cold.compact();
+        } catch (IOException | DataCorruptionException e) {
+            logger.error("Cold tier compaction exception", e);
+        }
+    }
+
+    private void putHot(final StorablePayment payment) {
+        hot.put(payment.getId(), payment);
+        Iterator<StorablePayment> eldest = hot.values().iterator();
+        while (hot.size() > hotCapacity) {
+            StorablePayment demoted = eldest.next();
+            try {
+                cold.put(demoted);
+            } catch (IOException e) {
+                logger.error("Cold tier writing exception, keeping payment in memory", e);
+                return;
+            }
+            eldest.remove();
+            demotions++;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package pl.prokodzik.altmetrik.payments.tracing;
+
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing of a single request: its trace id, total duration and durations of nested spans. One instance
+ * is kept per thread and reused by every request handled on it, so tracing does not allocate per span.
+ * Closing the trace returned by {@link Tracing#span(String)} ends the most recently opened span.
+ */
+public final class Trace implements AutoCloseable, StringBuilderFormattable {
+
+    static final int MAX_SPANS = 32;
+
+    private final String[] names = new String[MAX_SPANS];
+    private final long[] starts = new long[MAX_SPANS];
+    private final long[] durations = new long[MAX_SPANS];
+    private final int[] depths = new int[MAX_SPANS];
+    private final int[] open = new int[MAX_SPANS];
+    private final boolean noop;
+    private String traceId;
+    private long startNanos;
+    private long durationNanos;
+    private int spans;
+    private int openSpans;
+    private int droppedSpans;
+    private boolean active;
+
+    Trace(final boolean noop) {
+        this.noop = noop;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public long getDurationMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(active ? System.nanoTime() - startNanos : durationNanos);
+    }
+
+    public int getSpanCount() {
+        return spans;
+    }
+
+    public String getSpanName(final int span) {
+        return names[span];
+    }
+
+    public long getSpanMicros(final int span) {
+        return TimeUnit.NANOSECONDS.toMicros(durations[span]);
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    void begin(final String id) {
+        traceId = id;
+        startNanos = System.nanoTime();
+        durationNanos = 0;
+        spans = 0;
+        openSpans = 0;
+        droppedSpans = 0;
+        active = true;
+    }
+
+    void end() {
+        while (openSpans > 0) {
+            close();
+        }
+        durationNanos = System.nanoTime() - startNanos;
+        active = false;
+    }
+
+    Trace open(final String name) {
+        if (noop || !active) {
+            return this;
+        }
+        if (spans == MAX_SPANS || openSpans == MAX_SPANS) {
+            droppedSpans++;
+            if (openSpans < MAX_SPANS) {
+                open[openSpans++] = -1;
+            }
+            return this;
+        }
+        names[spans] = name;
+        depths[spans] = openSpans;
+        durations[spans] = -1;
+        starts[spans] = System.nanoTime();
+        open[openSpans++] = spans++;
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (noop || openSpans == 0) {
+            return;
+        }
+        int span = open[--openSpans];
+        if (span >= 0) {
+            durations[span] = System.nanoTime() - starts[span];
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder(32 + spans * 32);
+        formatTo(summary);
+        return summary.toString();
+    }
+
+    /**
+     * Spans in the order they were opened, nested spans are prefixed with {@code >}. Appends directly
+     * to the buffer of the log event, so logging the trace does not build intermediate strings.
+     */
+    @Override
+    public void formatTo(final StringBuilder summary) {
+        summary.append("trace=").append(traceId).append(" total=").append(getDurationMicros()).append("us");
+        for (int span = 0; span < spans; span++) {
+            summary.append(' ');
+            for (int depth = 0; depth < depths[span]; depth++) {
+                summary.append('>');
+            }
+            summary.append(names[span]).append('=');
+            if (durations[span] < 0) {
+                summary.append("open");
+            } else {
+                summary.append(TimeUnit.NANOSECONDS.toMicros(durations[span])).append("us");
+            }
+        }
+        if (droppedSpans > 0) {
+            summary.append(" dropped=").append(droppedSpans);
+        }
+    }
+}
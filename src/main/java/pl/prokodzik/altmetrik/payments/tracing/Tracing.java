@@ -0,0 +1,59 @@
+package pl.prokodzik.altmetrik.payments.tracing;
+
+import org.slf4j.MDC;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Entry point to the trace of the request handled by the current thread. Trace id is put into the logging
+ * MDC under {@value #TRACE_ID}, so every message logged while handling the request carries it.
+ */
+public final class Tracing {
+
+    public static final String TRACE_ID = "traceId";
+
+    private static final Pattern VALID_TRACE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final Trace NOOP = new Trace(true);
+    private static final ThreadLocal<Trace> CURRENT = ThreadLocal.withInitial(() -> new Trace(false));
+
+    private Tracing() {
+    }
+
+    /**
+     * Starts tracing a request, keeping given trace id when it is safe to log or generating a new one.
+     */
+    public static Trace begin(final String traceId) {
+        Trace trace = CURRENT.get();
+        trace.begin(traceId != null && VALID_TRACE_ID.matcher(traceId).matches() ? traceId : newTraceId());
+        MDC.put(TRACE_ID, trace.getTraceId());
+        return trace;
+    }
+
+    /**
+     * Opens a span of the current request, to be closed with try-with-resources. Outside of a traced
+     * request returns a trace which ignores spans.
+     */
+    public static Trace span(final String name) {
+        Trace trace = CURRENT.get();
+        return trace.isActive() ? trace.open(name) : NOOP;
+    }
+
+    /**
+     * Stops the clock of the current request. Trace id stays in the MDC until {@link #clear()}, so
+     * the summary line of the request carries it too.
+     */
+    public static Trace end() {
+        Trace trace = CURRENT.get();
+        trace.end();
+        return trace;
+    }
+
+    public static void clear() {
+        MDC.remove(TRACE_ID);
+    }
+
+    static String newTraceId() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+    }
+}
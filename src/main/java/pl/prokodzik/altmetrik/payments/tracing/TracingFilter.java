@@ -0,0 +1,31 @@
+package pl.prokodzik.altmetrik.payments.tracing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Filter;
+
+/**
+ * Starts a trace for every request and logs one summary line with its status and span timings
+ * when the response is done.
+ */
+public class TracingFilter {
+
+    public static final String TRACE_HEADER = "X-Trace-Id";
+
+    private final Logger logger = LoggerFactory.getLogger(TracingFilter.class);
+
+    public Filter before() {
+        return (req, resp) -> {
+            Trace trace = Tracing.begin(req.headers(TRACE_HEADER));
+            resp.header(TRACE_HEADER, trace.getTraceId());
+        };
+    }
+
+    public Filter after() {
+        return (req, resp) -> {
+            Trace trace = Tracing.end();
+            logger.info("{} {} {} {}", req.requestMethod(), req.pathInfo(), resp.status(), trace);
+            Tracing.clear();
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package pl.prokodzik.altmetrik.payments.tracing;
+
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.storage.ForwardingRepository;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.util.Currency;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Records a span for every repository call made while handling a traced request.
+ */
+public class TracingRepository extends ForwardingRepository {
+
+    public TracingRepository(final Repository<StorablePayment, String> repository) {
+        super(repository);
+    }
+
+    @Override
+    public StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+        try (Trace span = Tracing.span("repository.save")) {
+            return delegate.save(storablePayment);
+        }
+    }
+
+    @Override
+    public StorablePayment update(final StorablePayment storablePayment) throws PaymentNotFoundException {
+        try (Trace span = Tracing.span("repository.update")) {
+            return delegate.update(storablePayment);
+        }
+    }
+
+    @Override
+    public void delete(final String id) throws PaymentNotFoundException {
+        try (Trace span = Tracing.span("repository.delete")) {
+            delegate.delete(id);
+        }
+    }
+
+    @Override
+    public Optional<StorablePayment> getById(final String id) {
+        try (Trace span = Tracing.span("repository.getById")) {
+            return delegate.getById(id);
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getAll() {
+        try (Trace span = Tracing.span("repository.getAll")) {
+            return delegate.getAll();
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getPage(final String afterId, final int limit) {
+        try (Trace span = Tracing.span("repository.getPage")) {
+            return delegate.getPage(afterId, limit);
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getCreatedBetween(final long from, final long to) {
+        try (Trace span = Tracing.span("repository.getCreatedBetween")) {
+            return delegate.getCreatedBetween(from, to);
+        }
+    }
+
+    @Override
+    public List<StorablePayment> getSortedByAmount(final Currency currency, final long minAmount, final long maxAmount, final boolean descending, final int limit) {
+        try (Trace span = Tracing.span("repository.getSortedByAmount")) {
+            return delegate.getSortedByAmount(currency, minAmount, maxAmount, descending, limit);
+        }
+    }
+
+    @Override
+    public List<StorablePayment> updateWhere(final Predicate<? super StorablePayment> filter, final UnaryOperator<StorablePayment> change) {
+        try (Trace span = Tracing.span("repository.updateWhere")) {
+            return delegate.updateWhere(filter, change);
+        }
+    }
+
+    @Override
+    public List<String> deleteWhere(final Predicate<? super StorablePayment> filter) {
+        try (Trace span = Tracing.span("repository.deleteWhere")) {
+            return delegate.deleteWhere(filter);
+        }
+    }
+}
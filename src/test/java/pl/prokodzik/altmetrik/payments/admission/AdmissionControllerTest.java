@@ -0,0 +1,151 @@
+package pl.prokodzik.altmetrik.payments.admission;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class AdmissionControllerTest {
+
+    private AtomicLong clock;
+    private AdmissionController admissionController;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+        AdmissionConfig config = AdmissionConfig.builder()
+                .clientPermitsPerSecond(10)
+                .clientBurst(5)
+                .maxConcurrentReads(100)
+                .maxConcurrentWrites(2)
+                .maxConcurrentLists(1)
+                .targetQueueLatencyMillis(50)
+                .build();
+        admissionController = new AdmissionController(config, clock::get);
+    }
+
+    @Test
+    void should_rate_limit_client_after_burst() {
+        //given:
+        for (int i = 0; i < 5; i++) {
+            admitAndRelease("client", OperationClass.READ);
+        }
+
+        //when:
+        Decision decision = admissionController.admit("client", OperationClass.READ, 0);
+        Decision otherClientDecision = admissionController.admit("other", OperationClass.READ, 0);
+
+        //then:
+        Assertions.assertEquals(Decision.RATE_LIMITED, decision);
+        Assertions.assertEquals(Decision.ADMITTED, otherClientDecision);
+        Assertions.assertEquals(1, admissionController.getMetrics().get(OperationClass.READ, Decision.RATE_LIMITED));
+    }
+
+    @Test
+    void should_refill_tokens_over_time() {
+        //given:
+        for (int i = 0; i < 5; i++) {
+            admitAndRelease("client", OperationClass.READ);
+        }
+
+        //when:
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        Decision decision = admissionController.admit("client", OperationClass.READ, 0);
+
+        //then:
+        Assertions.assertEquals(Decision.ADMITTED, decision);
+    }
+
+    @Test
+    void should_limit_concurrent_operations_per_class() {
+        //given:
+        admissionController.admit("1", OperationClass.WRITE, 0);
+        admissionController.admit("2", OperationClass.WRITE, 0);
+
+        //when:
+        Decision overloaded = admissionController.admit("3", OperationClass.WRITE, 0);
+        Decision read = admissionController.admit("3", OperationClass.READ, 0);
+        admissionController.release(OperationClass.WRITE);
+        Decision afterRelease = admissionController.admit("4", OperationClass.WRITE, 0);
+
+        //then:
+        Assertions.assertEquals(Decision.OVERLOADED, overloaded);
+        Assertions.assertEquals(Decision.ADMITTED, read);
+        Assertions.assertEquals(Decision.ADMITTED, afterRelease);
+    }
+
+    @Test
+    void should_shed_listings_when_queue_latency_is_high() {
+        //given:
+        for (int i = 0; i < 100; i++) {
+            admissionController.getLoadShedder().record(1000);
+        }
+
+        //when:
+        Decision decision = admissionController.admit("client", OperationClass.LIST, 1000);
+
+        //then:
+        Assertions.assertEquals(Decision.SHED, decision);
+        Assertions.assertEquals(1, admissionController.getMetrics().get(OperationClass.LIST, Decision.SHED));
+    }
+
+    @Test
+    void should_classify_requests() {
+        //given:
+        AdmissionFilter admissionFilter = new AdmissionFilter(admissionController, "/payments");
+
+        //when:
+        OperationClass list = admissionFilter.classify("GET", "/payments");
+        OperationClass read = admissionFilter.classify("GET", "/payments/1");
+        OperationClass write = admissionFilter.classify("PATCH", "/payments/1");
+
+        //then:
+        Assertions.assertEquals(OperationClass.LIST, list);
+        Assertions.assertEquals(OperationClass.READ, read);
+        Assertions.assertEquals(OperationClass.WRITE, write);
+    }
+
+    @Test
+    void should_trust_client_header_only_from_proxies() {
+        //given:
+        AdmissionFilter admissionFilter = new AdmissionFilter(admissionController, "/payments", Set.of("10.0.0.1"));
+
+        //when:
+        String direct = admissionFilter.clientId("192.168.1.5", "rotated-id");
+        String proxied = admissionFilter.clientId("10.0.0.1", "client-7");
+        String proxiedWithoutHeader = admissionFilter.clientId("10.0.0.1", null);
+
+        //then:
+        Assertions.assertEquals("192.168.1.5", direct);
+        Assertions.assertEquals("client-7", proxied);
+        Assertions.assertEquals("10.0.0.1", proxiedWithoutHeader);
+    }
+
+    @Test
+    void should_share_one_bucket_between_new_clients_when_too_many_are_tracked() {
+        //given:
+        for (int i = 0; i < 10_000; i++) {
+            admitAndRelease("client-" + i, OperationClass.READ);
+        }
+        for (int i = 0; i < 5; i++) {
+            admitAndRelease("new-" + i, OperationClass.READ);
+        }
+
+        //when:
+        Decision overflowing = admissionController.admit("new-5", OperationClass.READ, 0);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        Decision afterSweep = admissionController.admit("new-6", OperationClass.READ, 0);
+
+        //then:
+        Assertions.assertEquals(Decision.RATE_LIMITED, overflowing);
+        Assertions.assertEquals(Decision.ADMITTED, afterSweep);
+    }
+
+    private void admitAndRelease(String clientId, OperationClass operationClass) {
+        Assertions.assertEquals(Decision.ADMITTED, admissionController.admit(clientId, operationClass, 0));
+        admissionController.release(operationClass);
+    }
+}
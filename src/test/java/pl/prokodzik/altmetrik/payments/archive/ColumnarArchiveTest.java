@@ -0,0 +1,212 @@
+package pl.prokodzik.altmetrik.payments.archive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.prokodzik.altmetrik.payments.exceptions.DataCorruptionException;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+class ColumnarArchiveTest {
+
+    private static final List<Currency> CURRENCIES = List.of(Currency.getInstance("PLN"), Currency.getInstance("USD"), Currency.getInstance("EUR"));
+
+    private File archiveFile;
+    private List<StorablePayment> payments;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        archiveFile = File.createTempFile("columnarArchiveTest", ".archive");
+        Random random = new Random(42);
+        payments = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Long amount = i % 97 == 0 ? null : (long) random.nextInt(100_000) - 1000;
+            Long createdAt = i % 89 == 0 ? null : 1_600_000_000_000L + i * 1000L + random.nextInt(1000);
+            payments.add(new StorablePayment(UUID.randomUUID().toString(), amount, CURRENCIES.get(random.nextInt(CURRENCIES.size())),
+                    "user" + random.nextInt(50), "account" + random.nextInt(500), createdAt));
+        }
+        payments.add(new StorablePayment("min", Long.MIN_VALUE, null, null, null, Long.MIN_VALUE));
+        payments.add(new StorablePayment("max", Long.MAX_VALUE, null, null, null, Long.MAX_VALUE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        archiveFile.delete();
+    }
+
+    @Test
+    void should_read_back_written_payments() throws IOException, DataCorruptionException {
+        //given:
+        new ArchiveWriter().write(payments, archiveFile);
+
+        //when:
+        List<StorablePayment> read;
+        try (ColumnarArchive archive = new ColumnarArchive(archiveFile)) {
+            read = archive.readAll();
+        }
+
+        //then:
+        Assertions.assertEquals(payments, read);
+        Assertions.assertEquals(payments.stream().map(StorablePayment::getCreatedAt).collect(Collectors.toList()),
+                read.stream().map(StorablePayment::getCreatedAt).collect(Collectors.toList()));
+    }
+
+    @Test
+    void should_aggregate_filtered_payments() throws IOException, DataCorruptionException {
+        //given:
+        new ArchiveWriter().write(payments, archiveFile);
+        Currency pln = Currency.getInstance("PLN");
+        List<StorablePayment> expected = payments.stream()
+                .filter(p -> pln.equals(p.getCurrency()) && p.getAmount() != null && p.getAmount() >= 0 && p.getAmount() <= 50_000)
+                .collect(Collectors.toList());
+
+        //when:
+        try (ColumnarArchive archive = new ColumnarArchive(archiveFile)) {
+            ArchiveScan scan = archive.scan().currency(pln).amountBetween(0, 50_000);
+
+            //then:
+            Assertions.assertEquals(expected.size(), scan.count());
+            Assertions.assertEquals(expected.stream().mapToLong(StorablePayment::getAmount).sum(), scan.sum());
+            Assertions.assertEquals(Map.of(pln, (long) expected.size()), scan.countByCurrency());
+        }
+    }
+
+    @Test
+    void should_sum_amounts_by_currency() throws IOException, DataCorruptionException {
+        //given:
+        new ArchiveWriter().write(payments, archiveFile);
+        Map<Currency, Long> expected = payments.stream()
+                .filter(p -> p.getCurrency() != null && p.getAmount() != null && "user7".equals(p.getUserId()))
+                .collect(Collectors.groupingBy(StorablePayment::getCurrency, Collectors.summingLong(StorablePayment::getAmount)));
+
+        //when:
+        Map<Currency, Long> sums;
+        try (ColumnarArchive archive = new ColumnarArchive(archiveFile)) {
+            sums = archive.scan().userId("user7").sumByCurrency();
+        }
+
+        //then:
+        Assertions.assertEquals(expected, sums);
+    }
+
+    @Test
+    void should_build_amount_histogram() throws IOException, DataCorruptionException {
+        //given:
+        new ArchiveWriter().write(payments, archiveFile);
+        Map<Long, Long> expected = payments.stream()
+                .filter(p -> p.getAmount() != null && "account1".equals(p.getAccountNumber()))
+                .collect(Collectors.groupingBy(p -> Math.floorDiv(p.getAmount(), 10_000L) * 10_000L, Collectors.counting()));
+
+        //when:
+        SortedMap<Long, Long> histogram;
+        try (ColumnarArchive archive = new ColumnarArchive(archiveFile)) {
+            histogram = archive.scan().accountNumber("account1").amountHistogram(10_000);
+        }
+
+        //then:
+        Assertions.assertEquals(expected, histogram);
+    }
+
+    @Test
+    void should_count_offsets_beyond_two_gigabytes() throws IOException {
+        //given:
+        byte[] chunk = new byte[64 << 20];
+        CountingOutputStream counter = new CountingOutputStream(OutputStream.nullOutputStream());
+
+        //when:
+        for (int i = 0; i < 48; i++) {
+            counter.write(chunk, 0, chunk.length);
+        }
+        counter.write(1);
+
+        //then:
+        Assertions.assertEquals(48L * chunk.length + 1, counter.getCount());
+    }
+
+    @Test
+    void should_return_written_file_size() throws IOException {
+        //when:
+        long fileSize = new ArchiveWriter().write(payments, archiveFile);
+
+        //then:
+        Assertions.assertEquals(archiveFile.length(), fileSize);
+    }
+
+    @Test
+    void should_load_only_scanned_columns() throws IOException, DataCorruptionException {
+        //given:
+        long fileSize = new ArchiveWriter().write(payments, archiveFile);
+
+        //when:
+        try (ColumnarArchive archive = new ColumnarArchive(archiveFile)) {
+            long afterOpen = archive.getBytesRead();
+            int count = archive.scan().currency(Currency.getInstance("USD")).count();
+            long afterScan = archive.getBytesRead();
+            archive.scan().currency(Currency.getInstance("EUR")).count();
+
+            //then:
+            Assertions.assertTrue(count > 0);
+            Assertions.assertTrue(afterOpen < 200);
+            Assertions.assertTrue(afterScan < fileSize / 10);
+            Assertions.assertEquals(afterScan, archive.getBytesRead());
+        }
+    }
+
+    @Test
+    void should_return_nothing_for_unknown_value() throws IOException, DataCorruptionException {
+        //given:
+        new ArchiveWriter().write(payments, archiveFile);
+
+        //when:
+        try (ColumnarArchive archive = new ColumnarArchive(archiveFile)) {
+            ArchiveScan scan = archive.scan().userId("nobody");
+
+            //then:
+            Assertions.assertEquals(0, scan.count());
+            Assertions.assertTrue(scan.amountHistogram(1).isEmpty());
+        }
+    }
+
+    @Test
+    void should_reject_file_without_footer() throws IOException {
+        //given:
+        new ArchiveWriter().write(payments, archiveFile);
+        try (RandomAccessFile file = new RandomAccessFile(archiveFile, "rw")) {
+            file.setLength(file.length() - 4);
+        }
+
+        //when:
+        //then:
+        Assertions.assertThrows(DataCorruptionException.class, () -> new ColumnarArchive(archiveFile));
+    }
+
+    @Test
+    void should_reject_section_outside_of_file() throws IOException {
+        //given:
+        new ArchiveWriter().write(payments, archiveFile);
+        try (RandomAccessFile file = new RandomAccessFile(archiveFile, "rw")) {
+            file.seek(file.length() - ArchiveWriter.TRAILER_SIZE);
+            file.seek(file.readLong() + 8);
+            file.readUTF();
+            file.readLong();
+            file.writeLong(Integer.MAX_VALUE + 1L);
+        }
+
+        //when:
+        //then:
+        Assertions.assertThrows(DataCorruptionException.class, () -> new ColumnarArchive(archiveFile));
+    }
+}
@@ -0,0 +1,92 @@
+package pl.prokodzik.altmetrik.payments.codec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pl.prokodzik.altmetrik.payments.exceptions.InputDataException;
+import pl.prokodzik.altmetrik.payments.service.PaymentInput;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.util.Currency;
+import java.util.List;
+
+class CborCodecTest {
+
+    private final CborCodec codec = new CborCodec();
+
+    @Test
+    void should_encode_payment_as_map() {
+        //given:
+        StorablePayment payment = new StorablePayment("1", 1000L, Currency.getInstance("PLN"), "u", null);
+
+        //when:
+        byte[] encoded = codec.encode(payment);
+
+        //then:
+        byte[] expected = bytes(0xa6,
+                0x62, 'i', 'd', 0x61, '1',
+                0x66, 'a', 'm', 'o', 'u', 'n', 't', 0x19, 0x03, 0xe8,
+                0x68, 'c', 'u', 'r', 'r', 'e', 'n', 'c', 'y', 0x63, 'P', 'L', 'N',
+                0x66, 'u', 's', 'e', 'r', 'I', 'd', 0x61, 'u',
+                0x6d, 'a', 'c', 'c', 'o', 'u', 'n', 't', 'N', 'u', 'm', 'b', 'e', 'r', 0xf6,
+                0x69, 'c', 'r', 'e', 'a', 't', 'e', 'd', 'A', 't', 0xf6);
+        Assertions.assertArrayEquals(expected, encoded);
+    }
+
+    @Test
+    void should_encode_list_as_array() {
+        //given:
+        StorablePayment payment = new StorablePayment("1", -5L, Currency.getInstance("EUR"), "u", "a");
+
+        //when:
+        byte[] encoded = codec.encode(List.of(payment, payment));
+
+        //then:
+        byte[] single = codec.encode(payment);
+        Assertions.assertEquals(1 + 2 * single.length, encoded.length);
+        Assertions.assertEquals(0x82, encoded[0] & 0xff);
+    }
+
+    @Test
+    void should_decode_input_skipping_unknown_keys() throws InputDataException {
+        //given:
+        byte[] body = bytes(0xbf,
+                0x66, 'a', 'm', 'o', 'u', 'n', 't', 0x3a, 0x00, 0x01, 0x86, 0x9f,
+                0x65, 'e', 'x', 't', 'r', 'a', 0x82, 0xfb, 0, 0, 0, 0, 0, 0, 0, 0, 0xf5,
+                0x68, 'c', 'u', 'r', 'r', 'e', 'n', 'c', 'y', 0x7f, 0x62, 'P', 'L', 0x61, 'N', 0xff,
+                0x66, 'u', 's', 'e', 'r', 'I', 'd', 0xf6,
+                0xff);
+
+        //when:
+        PaymentInput input = codec.decodeInput(body);
+
+        //then:
+        Assertions.assertEquals(-100000L, input.getAmount());
+        Assertions.assertEquals("PLN", input.getCurrency());
+        Assertions.assertNull(input.getUserId());
+        Assertions.assertNull(input.getAccountNumber());
+    }
+
+    @Test
+    void should_reject_malformed_input() {
+        //given:
+        byte[] truncated = bytes(0xa1, 0x66, 'a', 'm', 'o', 'u', 'n', 't', 0x1a, 0x00);
+        byte[] textAmount = bytes(0xa1, 0x66, 'a', 'm', 'o', 'u', 'n', 't', 0x61, '1');
+        byte[] trailing = bytes(0xa0, 0x00);
+        byte[] hugeString = bytes(0xa1, 0x7b, 0x7f, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff);
+
+        //when:
+        //then:
+        Assertions.assertThrows(InputDataException.class, () -> codec.decodeInput(truncated));
+        Assertions.assertThrows(InputDataException.class, () -> codec.decodeInput(textAmount));
+        Assertions.assertThrows(InputDataException.class, () -> codec.decodeInput(trailing));
+        Assertions.assertThrows(InputDataException.class, () -> codec.decodeInput(hugeString));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
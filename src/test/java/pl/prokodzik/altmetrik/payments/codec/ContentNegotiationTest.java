@@ -0,0 +1,80 @@
+package pl.prokodzik.altmetrik.payments.codec;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+class ContentNegotiationTest {
+
+    private final JsonCodec json = new JsonCodec(new Gson());
+    private final CborCodec cbor = new CborCodec();
+    private final ContentNegotiation contentNegotiation = new ContentNegotiation(json, cbor);
+    private final ResponseCompression responseCompression = new ResponseCompression(1024);
+
+    @Test
+    void should_select_codec_by_accept_header() {
+        //when:
+        //then:
+        Assertions.assertSame(json, contentNegotiation.select(null));
+        Assertions.assertSame(json, contentNegotiation.select("*/*"));
+        Assertions.assertSame(cbor, contentNegotiation.select("application/cbor"));
+        Assertions.assertSame(cbor, contentNegotiation.select("application/json;q=0.5, application/cbor"));
+        Assertions.assertSame(cbor, contentNegotiation.select("application/json;q=0, */*"));
+        Assertions.assertNull(contentNegotiation.select("text/html, application/cbor;q=0"));
+    }
+
+    @Test
+    void should_select_compression_by_accept_encoding_header() {
+        //when:
+        //then:
+        Assertions.assertNull(responseCompression.select(null));
+        Assertions.assertNull(responseCompression.select("identity, br"));
+        Assertions.assertEquals(ResponseCompression.GZIP, responseCompression.select("gzip, deflate"));
+        Assertions.assertEquals(ResponseCompression.DEFLATE, responseCompression.select("gzip;q=0.2, deflate"));
+        Assertions.assertEquals(ResponseCompression.DEFLATE, responseCompression.select("gzip;q=0, *"));
+        Assertions.assertNull(responseCompression.select("*;q=0"));
+        Assertions.assertEquals(ResponseCompression.DEFLATE, responseCompression.select("*"));
+        Assertions.assertEquals(ResponseCompression.DEFLATE, responseCompression.select("GZIP, *;q=0.5"));
+    }
+
+    @Test
+    void should_deflate_body_for_wildcard_encoding() throws IOException, DataFormatException {
+        //given:
+        byte[] body = "payments ".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+        //when:
+        Object encoded = responseCompression.encode(responseCompression.select("*"), body);
+
+        //then:
+        Assertions.assertTrue(encoded instanceof InputStream);
+        byte[] compressed;
+        try (InputStream stream = (InputStream) encoded) {
+            compressed = stream.readAllBytes();
+        }
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] inflated = new byte[body.length];
+        Assertions.assertEquals(body.length, inflater.inflate(inflated));
+        Assertions.assertTrue(inflater.finished());
+        Assertions.assertArrayEquals(body, inflated);
+        Assertions.assertTrue(compressed.length < body.length);
+    }
+
+    @Test
+    void should_leave_gzip_body_to_spark() {
+        //given:
+        byte[] body = "payments ".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+        //when:
+        Object encoded = responseCompression.encode(responseCompression.select("gzip"), body);
+
+        //then:
+        Assertions.assertSame(body, encoded);
+    }
+}
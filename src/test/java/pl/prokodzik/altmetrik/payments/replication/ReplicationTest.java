@@ -0,0 +1,131 @@
+package pl.prokodzik.altmetrik.payments.replication;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.storage.Repository;
+import pl.prokodzik.altmetrik.payments.storage.SnapshotRepository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.IOException;
+import java.util.Currency;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+class ReplicationTest {
+
+    private ReplicationLeader leader;
+    private ReplicationFollower follower;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (follower != null) {
+            follower.close();
+        }
+        if (leader != null) {
+            leader.close();
+        }
+    }
+
+    @Test
+    void should_replicate_writes_to_follower() throws Exception {
+        //given:
+        leader = new ReplicationLeader(newRepository(), 0, 1000, 50);
+        follower = new ReplicationFollower(newRepository(), "localhost", leader.getPort(), 50);
+        Repository<StorablePayment, String> leaderRepository = leader.getRepository();
+
+        //when:
+        StorablePayment first = leaderRepository.save(payment(null, "10"));
+        StorablePayment second = leaderRepository.save(payment(null, "20"));
+        leaderRepository.update(payment(first.getId(), "15"));
+        leaderRepository.delete(second.getId());
+
+        //then:
+        awaitSequence(4);
+        Repository<StorablePayment, String> followerRepository = follower.getRepository();
+        Assertions.assertEquals(1, followerRepository.getAll().size());
+        Assertions.assertEquals(Long.valueOf(15), followerRepository.getById(first.getId()).get().getAmount());
+        Assertions.assertEquals(Optional.empty(), followerRepository.getById(second.getId()));
+        Assertions.assertEquals(0L, follower.getStatus().get("lagEntries"));
+    }
+
+    @Test
+    void should_catch_up_from_snapshot_when_log_was_overwritten() throws Exception {
+        //given:
+        leader = new ReplicationLeader(newRepository(), 0, 4, 50);
+        Repository<StorablePayment, String> leaderRepository = leader.getRepository();
+        StorablePayment deleted = leaderRepository.save(payment(null, "1"));
+        for (int i = 0; i < 10; i++) {
+            leaderRepository.save(payment(null, String.valueOf(i)));
+        }
+        leaderRepository.delete(deleted.getId());
+        Repository<StorablePayment, String> followerRepository = newRepository();
+        followerRepository.save(payment("stale", "100"));
+
+        //when:
+        follower = new ReplicationFollower(followerRepository, "localhost", leader.getPort(), 50);
+        awaitSequence(12);
+        leaderRepository.save(payment("after-snapshot", "5"));
+
+        //then:
+        awaitSequence(13);
+        Assertions.assertEquals(11, followerRepository.getAll().size());
+        Assertions.assertEquals(Optional.empty(), followerRepository.getById("stale"));
+        Assertions.assertTrue(followerRepository.getById("after-snapshot").isPresent());
+        Assertions.assertEquals(1L, follower.getStatus().get("snapshotsLoaded"));
+    }
+
+    @Test
+    void should_reload_snapshot_when_applying_a_mutation_fails() throws Exception {
+        //given:
+        leader = new ReplicationLeader(newRepository(), 0, 1000, 50);
+        Repository<StorablePayment, String> leaderRepository = leader.getRepository();
+        AtomicBoolean failed = new AtomicBoolean();
+        Repository<StorablePayment, String> followerRepository = new SnapshotRepository(() -> UUID.randomUUID().toString()) {
+            @Override
+            public StorablePayment save(final StorablePayment storablePayment) throws PaymentAlreadyExistsException {
+                if ("poison".equals(storablePayment.getId()) && failed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("Disk full");
+                }
+                return super.save(storablePayment);
+            }
+        };
+        follower = new ReplicationFollower(followerRepository, "localhost", leader.getPort(), 50);
+        await(() -> Long.valueOf(1).equals(follower.getStatus().get("snapshotsLoaded")));
+
+        //when:
+        leaderRepository.save(payment("poison", "10"));
+        leaderRepository.save(payment("next", "20"));
+
+        //then:
+        awaitSequence(2);
+        Assertions.assertTrue(failed.get());
+        Assertions.assertTrue(followerRepository.getById("poison").isPresent());
+        Assertions.assertTrue(followerRepository.getById("next").isPresent());
+        Assertions.assertEquals(2L, follower.getStatus().get("snapshotsLoaded"));
+    }
+
+    private void awaitSequence(final long sequence) throws InterruptedException {
+        await(() -> follower.getAppliedSequence() >= sequence);
+    }
+
+    private void await(final BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Follower did not catch up: " + follower.getStatus());
+            Thread.sleep(10);
+        }
+    }
+
+    private Repository<StorablePayment, String> newRepository() {
+        return new SnapshotRepository(() -> UUID.randomUUID().toString());
+    }
+
+    private StorablePayment payment(final String id, final String amount) {
+        return StorablePayment.builder().id(id).amount(Long.valueOf(amount)).currency(Currency.getInstance("PLN"))
+                .userId("user").accountNumber("account").build();
+    }
+}
@@ -11,6 +11,9 @@ import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
 import pl.prokodzik.altmetrik.payments.storage.InMemRepository;
 import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.Currency;
 import java.util.List;
 import java.util.Locale;
@@ -188,4 +191,69 @@ class SimplePaymentsServiceTest {
         Assertions.assertThrows(PaymentNotFoundException.class, runnable);
     }
 
-}
\ No newline at end of file
+    @Test
+    void should_assign_creation_time_and_keep_it_on_update() throws PaymentAlreadyExistsException, InputDataException, PaymentNotFoundException {
+        //given:
+        Instant created = Instant.parse("2021-03-01T10:15:30Z");
+        paymentsService = new SimplePaymentsService(inMemRepository, Clock.fixed(created, ZoneOffset.UTC));
+        StorablePayment saved = paymentsService.save(new PaymentInput(10L, "USD", "1", "1"));
+
+        //when:
+        StorablePayment updated = paymentsService.update(new PaymentInput(20L, null, null, null), saved.getId());
+        List<StorablePayment> range = paymentsService.getCreatedBetween(created.toEpochMilli(), created.toEpochMilli() + 1);
+
+        //then:
+        Assertions.assertEquals(created.toEpochMilli(), saved.getCreatedAt());
+        Assertions.assertEquals(created.toEpochMilli(), updated.getCreatedAt());
+        Assertions.assertEquals(List.of(updated), range);
+        Assertions.assertThrows(InputDataException.class, () -> paymentsService.getCreatedBetween(2, 1));
+    }
+
+    @Test
+    void should_update_and_delete_matching_payments() throws PaymentAlreadyExistsException, InputDataException {
+        //given:
+        StorablePayment first = inMemRepository.save(new StorablePayment(null, 10L, Currency.getInstance("USD"), "1", "a"));
+        StorablePayment second = inMemRepository.save(new StorablePayment(null, 20L, Currency.getInstance("EUR"), "1", "b"));
+        StorablePayment other = inMemRepository.save(new StorablePayment(null, 30L, Currency.getInstance("USD"), "2", "a"));
+
+        //when:
+        int updated = paymentsService.updateWhere(new PaymentFilter("1", null, null), new PaymentInput(null, null, null, "c"));
+        int deleted = paymentsService.deleteWhere(new PaymentFilter(null, "c", "USD"));
+
+        //then:
+        Assertions.assertEquals(2, updated);
+        Assertions.assertEquals(1, deleted);
+        Assertions.assertTrue(inMemRepository.getById(first.getId()).isEmpty());
+        Assertions.assertEquals("c", inMemRepository.getById(second.getId()).orElseThrow().getAccountNumber());
+        Assertions.assertEquals(20L, inMemRepository.getById(second.getId()).orElseThrow().getAmount());
+        Assertions.assertEquals(other, inMemRepository.getById(other.getId()).orElseThrow());
+    }
+
+    @Test
+    void should_reject_bulk_operation_without_criteria() {
+        //when:
+        Executable update = () -> paymentsService.updateWhere(new PaymentFilter(null, null, null), new PaymentInput(1L, null, null, null));
+        Executable delete = () -> paymentsService.deleteWhere(new PaymentFilter(null, null, null));
+
+        //then:
+        Assertions.assertThrows(InputDataException.class, update);
+        Assertions.assertThrows(InputDataException.class, delete);
+    }
+
+    @Test
+    void should_sort_by_amount() throws PaymentAlreadyExistsException, InputDataException {
+        //given:
+        StorablePayment small = inMemRepository.save(new StorablePayment(null, 10L, Currency.getInstance("USD"), "1", "1"));
+        StorablePayment large = inMemRepository.save(new StorablePayment(null, 30L, Currency.getInstance("USD"), "1", "1"));
+        inMemRepository.save(new StorablePayment(null, 20L, Currency.getInstance("EUR"), "1", "1"));
+
+        //when:
+        List<StorablePayment> sorted = paymentsService.getSortedByAmount("USD", Long.MIN_VALUE, Long.MAX_VALUE, true, 5);
+
+        //then:
+        Assertions.assertEquals(List.of(large, small), sorted);
+        Assertions.assertThrows(InputDataException.class, () -> paymentsService.getSortedByAmount(null, 0, 10, true, 0));
+        Assertions.assertThrows(InputDataException.class, () -> paymentsService.getSortedByAmount(null, 10, 0, true, 5));
+        Assertions.assertThrows(InputDataException.class, () -> paymentsService.getSortedByAmount("XYZ1", 0, 10, true, 5));
+    }
+}
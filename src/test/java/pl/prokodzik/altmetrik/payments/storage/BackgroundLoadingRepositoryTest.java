@@ -0,0 +1,133 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.stream.Collectors.toList;
+
+class BackgroundLoadingRepositoryTest {
+
+    private SlowDiskRepository diskRepository;
+    private StorablePayment updated;
+    private StorablePayment deleted;
+    private StorablePayment untouched;
+
+    @BeforeEach
+    void setUp() throws PaymentAlreadyExistsException {
+        diskRepository = new SlowDiskRepository();
+        updated = diskRepository.save(payment(10L));
+        deleted = diskRepository.save(payment(20L));
+        untouched = diskRepository.save(payment(30L));
+    }
+
+    @Test
+    void should_serve_requests_while_loading() throws Exception {
+        //given:
+        BackgroundLoadingRepository repository = new BackgroundLoadingRepository(diskRepository).start();
+        Assertions.assertTrue(diskRepository.loadStarted.await(5, TimeUnit.SECONDS));
+
+        //when:
+        Optional<StorablePayment> fromDisk = repository.getById(untouched.getId());
+        StorablePayment saved = repository.save(payment(40L));
+        StorablePayment newVersion = new StorablePayment(updated.getId(), 15L, updated.getCurrency(), "1", "1");
+        repository.update(newVersion);
+        repository.delete(deleted.getId());
+
+        //then:
+        Assertions.assertFalse(repository.isFullyLoaded());
+        Assertions.assertEquals(Optional.of(untouched), fromDisk);
+        Assertions.assertEquals(Optional.of(newVersion), repository.getById(updated.getId()));
+        Assertions.assertEquals(Optional.empty(), repository.getById(deleted.getId()));
+        Assertions.assertEquals(sorted(List.of(saved, newVersion)), sorted(repository.getAll()));
+        Assertions.assertEquals(1L, repository.getMetrics().get("loadingDiskReads"));
+        Assertions.assertEquals(3, repository.getMetrics().get("pendingWrites"));
+    }
+
+    @Test
+    void should_apply_pending_writes_after_loading() throws Exception {
+        //given:
+        BackgroundLoadingRepository repository = new BackgroundLoadingRepository(diskRepository).start();
+        Assertions.assertTrue(diskRepository.loadStarted.await(5, TimeUnit.SECONDS));
+        StorablePayment newVersion = new StorablePayment(updated.getId(), 15L, updated.getCurrency(), "1", "1");
+        repository.update(newVersion);
+        repository.delete(deleted.getId());
+
+        //when:
+        diskRepository.finishLoading.countDown();
+        awaitLoaded(repository);
+        StorablePayment savedAfterLoading = repository.save(payment(50L));
+
+        //then:
+        Assertions.assertEquals(sorted(diskRepository.getAll()), sorted(repository.getAll()));
+        Assertions.assertEquals(List.of(newVersion, untouched, savedAfterLoading), sorted(repository.getAll()).stream()
+                .sorted(Comparator.comparing(StorablePayment::getAmount)).collect(toList()));
+        Assertions.assertEquals(0, repository.getMetrics().get("pendingWrites"));
+        Assertions.assertEquals(3L, repository.getMetrics().get("loadedPayments"));
+        Assertions.assertTrue(diskRepository.warmedUp);
+    }
+
+    @Test
+    void should_throw_when_deleting_missing_payment_while_loading() throws InterruptedException {
+        //given:
+        BackgroundLoadingRepository repository = new BackgroundLoadingRepository(diskRepository).start();
+        Assertions.assertTrue(diskRepository.loadStarted.await(5, TimeUnit.SECONDS));
+
+        //when:
+        //then:
+        Assertions.assertThrows(PaymentNotFoundException.class, () -> repository.delete(UUID.randomUUID().toString()));
+        Assertions.assertEquals(0, repository.getMetrics().get("pendingWrites"));
+    }
+
+    private void awaitLoaded(final BackgroundLoadingRepository repository) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!repository.isFullyLoaded()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private List<StorablePayment> sorted(final List<StorablePayment> payments) {
+        return payments.stream().sorted(Comparator.comparing(StorablePayment::getId)).collect(toList());
+    }
+
+    private StorablePayment payment(final Long amount) {
+        return new StorablePayment(null, amount, Currency.getInstance(Locale.CANADA), "1", "1");
+    }
+
+    private static class SlowDiskRepository extends InMemRepository implements Warmable {
+        private final CountDownLatch loadStarted = new CountDownLatch(1);
+        private final CountDownLatch finishLoading = new CountDownLatch(1);
+        private volatile boolean warmedUp;
+
+        private SlowDiskRepository() {
+            super(() -> UUID.randomUUID().toString(), new ConcurrentHashMap<>());
+        }
+
+        @Override
+        public void warmUp(final Consumer<StorablePayment> stored) {
+            warmedUp = true;
+            List<StorablePayment> all = super.getAll();
+            loadStarted.countDown();
+            try {
+                finishLoading.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            all.forEach(stored);
+        }
+    }
+}
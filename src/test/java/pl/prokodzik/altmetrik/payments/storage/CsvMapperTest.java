@@ -57,4 +57,69 @@ class CsvMapperTest {
         Assertions.assertThrows(DataCorruptionException.class, executable);
     }
 
-}
\ No newline at end of file
+    @Test
+    void should_read_row_with_valid_checksum() throws DataCorruptionException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment("123", 10L, Currency.getInstance(Locale.US), "1", "1");
+        String[] providedCsv = csvMapper.withChecksum(csvMapper.toCsv(storablePayment));
+
+        //when:
+        StorablePayment actualStorablePayment = csvMapper.fromValidCsv(providedCsv);
+
+        //then:
+        Assertions.assertEquals(storablePayment, actualStorablePayment);
+    }
+
+    @Test
+    void should_throw_when_checksum_does_not_match() {
+        //given:
+        String[] providedCsv = csvMapper.withChecksum(new String[]{"123", "10", "USD", "1", "1"});
+        providedCsv[1] = "11";
+
+        //when:
+        Executable executable = () -> csvMapper.validateLine(providedCsv);
+
+        //then:
+        Assertions.assertThrows(DataCorruptionException.class, executable);
+    }
+
+    @Test
+    void should_throw_when_row_cannot_be_parsed() {
+        //given:
+        String[] providedCsv = {"123", "ten", "USD", "1", "1"};
+
+        //when:
+        Executable executable = () -> csvMapper.fromValidCsv(providedCsv);
+
+        //then:
+        Assertions.assertThrows(DataCorruptionException.class, executable);
+    }
+
+    @Test
+    void should_read_row_with_creation_time() throws DataCorruptionException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment("123", 10L, Currency.getInstance(Locale.US), "1", "1", 1614593730000L);
+        String[] providedCsv = csvMapper.withChecksum(csvMapper.toCsv(storablePayment));
+
+        //when:
+        StorablePayment actualStorablePayment = csvMapper.fromValidCsv(providedCsv);
+
+        //then:
+        Assertions.assertEquals(7, providedCsv.length);
+        Assertions.assertEquals(storablePayment, actualStorablePayment);
+    }
+
+    @Test
+    void should_read_row_written_before_null_fields_were_hashed_as_empty() throws DataCorruptionException {
+        //given:
+        String[] providedCsv = csvMapper.withChecksum(new String[]{"123", "10", "USD", "null", "1"});
+        providedCsv[3] = "";
+
+        //when:
+        StorablePayment actualStorablePayment = csvMapper.fromValidCsv(providedCsv);
+
+        //then:
+        Assertions.assertEquals("", actualStorablePayment.getUserId());
+    }
+
+}
@@ -0,0 +1,115 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+class CsvRecoveryTest {
+
+    private static final CsvMapper csvMapper = new CsvMapper();
+    private static final Supplier<String> idSupplier = () -> UUID.randomUUID().toString();
+
+    private CsvRecovery csvRecovery;
+    private CsvRepository csvRepository;
+    private File tempFile;
+    private File quarantineFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempFile = File.createTempFile("csvRecoveryTest", "csv");
+        quarantineFile = new File(tempFile.getPath() + ".quarantine");
+        csvRecovery = new CsvRecovery(csvMapper);
+        csvRepository = new CsvRepository(idSupplier, csvMapper, tempFile);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tempFile.delete();
+        quarantineFile.delete();
+    }
+
+    @Test
+    void should_leave_valid_file_untouched() throws IOException, PaymentAlreadyExistsException {
+        //given:
+        saveThreePayments();
+        List<String> linesBefore = Files.readAllLines(tempFile.toPath());
+
+        //when:
+        RecoveryReport report = csvRecovery.recover(tempFile);
+
+        //then:
+        Assertions.assertEquals(3, report.getValidRecords());
+        Assertions.assertEquals(0, report.getQuarantinedRecords());
+        Assertions.assertEquals(linesBefore, Files.readAllLines(tempFile.toPath()));
+        Assertions.assertFalse(quarantineFile.exists());
+    }
+
+    @Test
+    void should_truncate_torn_tail() throws IOException, PaymentAlreadyExistsException {
+        //given:
+        saveThreePayments();
+        long validLength = tempFile.length();
+        Files.writeString(tempFile.toPath(), "\"" + UUID.randomUUID() + "\",\"10\",\"U", StandardOpenOption.APPEND);
+
+        //when:
+        RecoveryReport report = csvRecovery.recover(tempFile);
+
+        //then:
+        Assertions.assertEquals(3, report.getValidRecords());
+        Assertions.assertEquals(1, report.getQuarantinedRecords());
+        Assertions.assertEquals(validLength, tempFile.length());
+        Assertions.assertEquals(1, Files.readAllLines(quarantineFile.toPath()).size());
+        Assertions.assertEquals(3, csvRepository.getAll().size());
+    }
+
+    @Test
+    void should_quarantine_rows_with_invalid_checksum() throws IOException, PaymentAlreadyExistsException {
+        //given:
+        saveThreePayments();
+        List<String> lines = Files.readAllLines(tempFile.toPath());
+        lines.set(1, lines.get(1).replaceFirst("\"11\"", "\"99\""));
+        Files.write(tempFile.toPath(), lines);
+
+        //when:
+        RecoveryReport report = csvRecovery.recover(tempFile);
+
+        //then:
+        Assertions.assertEquals(2, report.getValidRecords());
+        Assertions.assertEquals(1, report.getQuarantinedRecords());
+        Assertions.assertEquals(List.of(lines.get(0), lines.get(2)), Files.readAllLines(tempFile.toPath()));
+        Assertions.assertEquals(List.of(lines.get(1)), Files.readAllLines(quarantineFile.toPath()));
+    }
+
+    @Test
+    void should_add_missing_new_line_after_complete_last_row() throws IOException, PaymentAlreadyExistsException {
+        //given:
+        saveThreePayments();
+        Files.write(tempFile.toPath(), Files.readString(tempFile.toPath()).stripTrailing().getBytes());
+
+        //when:
+        RecoveryReport report = csvRecovery.recover(tempFile);
+        csvRepository.save(new StorablePayment(UUID.randomUUID().toString(), 13L, Currency.getInstance(Locale.US), "1", "1"));
+
+        //then:
+        Assertions.assertEquals(3, report.getValidRecords());
+        Assertions.assertEquals(4, csvRepository.getAll().size());
+    }
+
+    private void saveThreePayments() throws PaymentAlreadyExistsException {
+        for (long amount = 10; amount < 13; amount++) {
+            csvRepository.save(new StorablePayment(UUID.randomUUID().toString(), amount, Currency.getInstance(Locale.US), "1", "1"));
+        }
+    }
+}
@@ -9,17 +9,25 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
 import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.exceptions.StorageException;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Currency;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -105,6 +113,163 @@ class CsvRepositoryTest {
         Assertions.assertEquals(0, getFileLines(tempFile).count());
     }
 
+    @Test
+    void should_skip_corrupted_rows_when_reading() throws PaymentAlreadyExistsException, IOException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+        csvRepository.save(storablePayment);
+        Files.writeString(tempFile.toPath(), "\"broken\",\"10\"\n\"" + UUID.randomUUID() + "\",\"1", StandardOpenOption.APPEND);
+
+        //when:
+        List<StorablePayment> all = csvRepository.getAll();
+
+        //then:
+        Assertions.assertEquals(List.of(storablePayment), all);
+        Assertions.assertEquals(Optional.of(storablePayment), csvRepository.getById(storablePayment.getId()));
+    }
+
+    @Test
+    void should_skip_reading_file_for_unknown_id() throws PaymentAlreadyExistsException, IOException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+        csvRepository.save(storablePayment);
+        csvRepository = new CsvRepository(() -> UUID.randomUUID().toString(), csvMapper, tempFile);
+
+        //when:
+        Optional<StorablePayment> unknown = csvRepository.getById(UUID.randomUUID().toString());
+        Optional<StorablePayment> known = csvRepository.getById(storablePayment.getId());
+
+        //then:
+        Assertions.assertTrue(unknown.isEmpty());
+        Assertions.assertTrue(known.isPresent());
+        Assertions.assertEquals(1L, csvRepository.getMetrics().get("bloomDefinitelyAbsent"));
+        Assertions.assertThrows(PaymentNotFoundException.class, () -> csvRepository.delete(UUID.randomUUID().toString()));
+    }
+
+    @Test
+    void should_recover_file_before_first_write_when_warm_up_is_deferred() throws PaymentAlreadyExistsException, IOException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+        csvRepository.save(storablePayment);
+        Files.writeString(tempFile.toPath(), "\"" + UUID.randomUUID() + "\",\"1", StandardOpenOption.APPEND);
+        csvRepository = new CsvRepository(() -> UUID.randomUUID().toString(), csvMapper, tempFile, Durability.osBuffered(), new CsvRecovery(csvMapper));
+
+        //when:
+        Map<String, Object> metricsBeforeWarmUp = csvRepository.getMetrics();
+        StorablePayment saved = csvRepository.save(new StorablePayment(null, 20L, Currency.getInstance(Locale.CANADA), "2", "2"));
+        csvRepository.warmUp();
+
+        //then:
+        Assertions.assertTrue(metricsBeforeWarmUp.isEmpty());
+        Assertions.assertEquals(List.of(storablePayment, saved), csvRepository.getAll());
+        Assertions.assertEquals(2, getFileLines(tempFile).count());
+        Assertions.assertEquals(1, csvRepository.getMetrics().get("bloomFilters"));
+        new File(tempFile.getPath() + ".quarantine").delete();
+    }
+
+    @Test
+    void should_serve_requests_while_warming_up() throws Exception {
+        //given:
+        StorablePayment stored = csvRepository.save(new StorablePayment(null, 10L, Currency.getInstance(Locale.CANADA), "1", "1"));
+        csvRepository = new CsvRepository(() -> UUID.randomUUID().toString(), csvMapper, tempFile, Durability.osBuffered(), new CsvRecovery(csvMapper));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<StorablePayment> warmedUp = new ArrayList<>();
+        List<StorablePayment> savedWhileWarming = new ArrayList<>();
+
+        //when:
+        csvRepository.warmUp(payment -> {
+            warmedUp.add(payment);
+            if (!savedWhileWarming.isEmpty()) {
+                return;
+            }
+            try {
+                savedWhileWarming.add(executor.submit(() -> csvRepository.save(new StorablePayment(null, 20L, Currency.getInstance(Locale.CANADA), "2", "2")))
+                        .get(5, TimeUnit.SECONDS));
+                Assertions.assertEquals(Optional.of(stored), executor.submit(() -> csvRepository.getById(stored.getId())).get(5, TimeUnit.SECONDS));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        executor.shutdown();
+
+        //then:
+        Assertions.assertEquals(stored, warmedUp.get(0));
+        Assertions.assertEquals(1, savedWhileWarming.size());
+        Assertions.assertThrows(PaymentAlreadyExistsException.class, () -> csvRepository.save(savedWhileWarming.get(0)));
+        Assertions.assertEquals(1, csvRepository.getMetrics().get("bloomFilters"));
+    }
+
+    @Test
+    void should_update_and_delete_matching_rows() throws PaymentAlreadyExistsException, IOException {
+        //given:
+        StorablePayment first = csvRepository.save(new StorablePayment(null, 10L, Currency.getInstance(Locale.CANADA), "1", "1"));
+        StorablePayment second = csvRepository.save(new StorablePayment(null, 20L, Currency.getInstance(Locale.CANADA), "1", "2"));
+        StorablePayment other = csvRepository.save(new StorablePayment(null, 30L, Currency.getInstance(Locale.CANADA), "2", "1"));
+
+        //when:
+        List<StorablePayment> updated = csvRepository.updateWhere(payment -> "1".equals(payment.getUserId()),
+                payment -> StorablePayment.builder().id(payment.getId()).amount(payment.getAmount() + 1).currency(payment.getCurrency())
+                        .userId(payment.getUserId()).accountNumber(payment.getAccountNumber()).build());
+        List<String> deleted = csvRepository.deleteWhere(payment -> "1".equals(payment.getAccountNumber()));
+
+        //then:
+        Assertions.assertEquals(2, updated.size());
+        Assertions.assertEquals(List.of(first.getId(), other.getId()), deleted);
+        Assertions.assertEquals(21L, csvRepository.getById(second.getId()).orElseThrow().getAmount());
+        Assertions.assertEquals(1, getFileLines(tempFile).count());
+        Assertions.assertEquals(List.of(), csvRepository.deleteWhere(payment -> false));
+    }
+
+    @Test
+    void should_fail_bulk_change_when_file_cannot_be_rewritten() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment saved = csvRepository.save(new StorablePayment(null, 10L, Currency.getInstance(Locale.CANADA), "1", "1"));
+        File rewrite = new File(tempFile.getPath() + ".rewrite");
+        rewrite.mkdir();
+
+        //when:
+        Executable update = () -> csvRepository.updateWhere(payment -> true, payment -> payment);
+        Executable delete = () -> csvRepository.deleteWhere(payment -> true);
+
+        //then:
+        Assertions.assertThrows(StorageException.class, update);
+        Assertions.assertThrows(StorageException.class, delete);
+        Assertions.assertEquals(Optional.of(saved), csvRepository.getById(saved.getId()));
+        rewrite.delete();
+    }
+
+    @Test
+    void should_read_back_payment_with_null_fields() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment saved = csvRepository.save(new StorablePayment(null, 10L, Currency.getInstance(Locale.CANADA), null, null));
+
+        //when:
+        Optional<StorablePayment> byId = csvRepository.getById(saved.getId());
+
+        //then:
+        Assertions.assertTrue(byId.isPresent());
+        Assertions.assertEquals(10L, byId.get().getAmount());
+        Assertions.assertEquals("", byId.get().getAccountNumber());
+        Assertions.assertEquals(1, csvRepository.getAll().size());
+    }
+
+    @Test
+    void should_replace_file_only_after_rewrite_is_complete() throws PaymentAlreadyExistsException, PaymentNotFoundException, IOException {
+        //given:
+        StorablePayment first = csvRepository.save(new StorablePayment(null, 10L, Currency.getInstance(Locale.CANADA), "1", "1"));
+        StorablePayment second = csvRepository.save(new StorablePayment(null, 20L, Currency.getInstance(Locale.CANADA), "1", "1"));
+        File rewrite = new File(tempFile.getPath() + ".rewrite");
+        Files.write(rewrite.toPath(), "partial".getBytes(), StandardOpenOption.CREATE);
+
+        //when:
+        List<StorablePayment> beforeRewrite = csvRepository.getAll();
+        csvRepository.delete(first.getId());
+
+        //then:
+        Assertions.assertEquals(List.of(first, second), beforeRewrite);
+        Assertions.assertEquals(List.of(second), csvRepository.getAll());
+        Assertions.assertFalse(rewrite.exists());
+    }
 
     private Stream<String> getFileLines(final File file) throws IOException {
         return Files.lines(Paths.get(file.getAbsolutePath()));
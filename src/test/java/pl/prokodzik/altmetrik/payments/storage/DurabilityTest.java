@@ -0,0 +1,37 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class DurabilityTest {
+
+    @Test
+    void should_parse_durability_modes() {
+        //when:
+        Durability none = Durability.parse("none");
+        Durability osBuffered = Durability.parse("os-buffered");
+        Durability perWrite = Durability.parse("fsync-per-write");
+        Durability batched = Durability.parse("fsync-batched-every-25-ms");
+
+        //then:
+        Assertions.assertEquals(DurabilityMode.NONE, none.getMode());
+        Assertions.assertTrue(none.isWriteDeferred());
+        Assertions.assertEquals(DurabilityMode.OS_BUFFERED, osBuffered.getMode());
+        Assertions.assertEquals(DurabilityMode.FSYNC_PER_WRITE, perWrite.getMode());
+        Assertions.assertEquals(DurabilityMode.FSYNC_BATCHED, batched.getMode());
+        Assertions.assertEquals("fsync-batched-every-25-ms", batched.toString());
+        batched.close();
+    }
+
+    @Test
+    void should_throw_when_durability_mode_unknown() {
+        //when:
+        Executable unknown = () -> Durability.parse("fsync-sometimes");
+        Executable withoutInterval = () -> Durability.parse("fsync-batched-every-N-ms");
+
+        //then:
+        Assertions.assertThrows(IllegalArgumentException.class, unknown);
+        Assertions.assertThrows(IllegalArgumentException.class, withoutInterval);
+    }
+}
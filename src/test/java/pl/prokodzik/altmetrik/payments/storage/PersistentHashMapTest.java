@@ -0,0 +1,69 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+class PersistentHashMapTest {
+
+    @Test
+    void should_keep_old_versions_untouched() {
+        //given:
+        PersistentHashMap<String, Integer> version1 = PersistentHashMap.<String, Integer>empty().put("a", 1);
+
+        //when:
+        PersistentHashMap<String, Integer> version2 = version1.put("a", 2).put("b", 3);
+        PersistentHashMap<String, Integer> version3 = version2.remove("a");
+
+        //then:
+        Assertions.assertEquals(1, version1.get("a"));
+        Assertions.assertEquals(1, version1.size());
+        Assertions.assertEquals(2, version2.get("a"));
+        Assertions.assertEquals(2, version2.size());
+        Assertions.assertFalse(version3.containsKey("a"));
+        Assertions.assertEquals(1, version3.size());
+    }
+
+    @Test
+    void should_handle_many_entries_and_hash_collisions() {
+        //given:
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.empty();
+
+        //when:
+        for (int i = 0; i < 10000; i++) {
+            map = map.put(new CollidingKey(i), i);
+        }
+        for (int i = 0; i < 10000; i += 3) {
+            map = map.remove(new CollidingKey(i));
+        }
+
+        //then:
+        Set<Integer> values = new HashSet<>(map.values());
+        Assertions.assertEquals(6666, map.size());
+        Assertions.assertEquals(6666, values.size());
+        for (int i = 0; i < 10000; i++) {
+            Assertions.assertEquals(i % 3 != 0, map.containsKey(new CollidingKey(i)));
+            Assertions.assertEquals(i % 3 != 0, values.contains(i));
+        }
+    }
+
+    private static class CollidingKey {
+        private final int value;
+
+        private CollidingKey(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value / 4;
+        }
+    }
+}
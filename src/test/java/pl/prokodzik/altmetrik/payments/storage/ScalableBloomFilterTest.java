@@ -0,0 +1,51 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+class ScalableBloomFilterTest {
+
+    @Test
+    void should_never_report_added_id_as_absent() {
+        //given:
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+        String[] ids = new String[5000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = UUID.randomUUID().toString();
+            filter.add(ids[i]);
+        }
+
+        //when:
+        boolean allPresent = true;
+        for (String id : ids) {
+            allPresent &= filter.mightContain(id);
+        }
+
+        //then:
+        Assertions.assertTrue(allPresent);
+        Assertions.assertTrue((int) filter.getMetrics().get("bloomFilters") > 1);
+    }
+
+    @Test
+    void should_keep_false_positive_rate_bounded_while_growing() {
+        //given:
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        for (int i = 0; i < 20000; i++) {
+            filter.add(UUID.randomUUID().toString());
+        }
+
+        //when:
+        int falsePositives = 0;
+        for (int i = 0; i < 20000; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+
+        //then:
+        Assertions.assertTrue(falsePositives < 20000 * 0.02, "false positives: " + falsePositives);
+        Assertions.assertTrue(filter.getExpectedFalsePositiveRate() < 0.02);
+    }
+}
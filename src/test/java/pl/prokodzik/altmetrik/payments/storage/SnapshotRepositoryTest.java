@@ -0,0 +1,126 @@
+package pl.prokodzik.altmetrik.payments.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+class SnapshotRepositoryTest {
+
+    private SnapshotRepository snapshotRepository;
+    private static final Supplier<String> idSupplier = () -> UUID.randomUUID().toString();
+
+    @BeforeEach
+    void setUp() {
+        snapshotRepository = new SnapshotRepository(idSupplier);
+    }
+
+    @Test
+    void should_save() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+
+        //when:
+        snapshotRepository.save(storablePayment);
+
+        //then:
+        Assertions.assertEquals(Optional.of(storablePayment), snapshotRepository.getById(storablePayment.getId()));
+    }
+
+    @Test
+    void should_throw_when_save_twice() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+
+        //when:
+        snapshotRepository.save(storablePayment);
+        Executable executable = () -> snapshotRepository.save(storablePayment);
+
+        //then:
+        Assertions.assertThrows(PaymentAlreadyExistsException.class, executable);
+        Assertions.assertEquals(1, snapshotRepository.getAll().size());
+    }
+
+    @Test
+    void update() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+        snapshotRepository.save(storablePayment);
+        StorablePayment paymentUpdate = new StorablePayment(storablePayment.getId(), 12L, Currency.getInstance(Locale.US), "2", "4");
+
+        //when:
+        snapshotRepository.update(paymentUpdate);
+
+        //then:
+        Assertions.assertEquals(Optional.of(paymentUpdate), snapshotRepository.getById(storablePayment.getId()));
+    }
+
+    @Test
+    void delete() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+        snapshotRepository.save(storablePayment);
+
+        //when:
+        snapshotRepository.delete(storablePayment.getId());
+
+        //then:
+        Assertions.assertTrue(snapshotRepository.getAll().isEmpty());
+        Assertions.assertThrows(PaymentNotFoundException.class, () -> snapshotRepository.delete(storablePayment.getId()));
+    }
+
+    @Test
+    void should_not_see_writes_made_after_snapshot() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+        snapshotRepository.save(storablePayment);
+        Collection<StorablePayment> snapshot = snapshotRepository.snapshot();
+
+        //when:
+        snapshotRepository.save(new StorablePayment(UUID.randomUUID().toString(), 11L, Currency.getInstance(Locale.CANADA), "1", "1"));
+        snapshotRepository.delete(storablePayment.getId());
+
+        //then:
+        Assertions.assertEquals(List.of(storablePayment), new ArrayList<>(snapshot));
+        Assertions.assertEquals(1, snapshotRepository.snapshot().size());
+    }
+
+    @Test
+    void should_not_lose_concurrent_writes() throws Exception {
+        //given:
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+
+        //when:
+        for (int thread = 0; thread < 8; thread++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    snapshotRepository.save(new StorablePayment(null, (long) i, Currency.getInstance(Locale.US), "1", "1"));
+                    snapshotRepository.getAll();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //then:
+        Assertions.assertEquals(8000, snapshotRepository.getAll().size());
+    }
+}
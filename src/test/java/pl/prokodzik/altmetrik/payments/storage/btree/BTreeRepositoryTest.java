@@ -0,0 +1,181 @@
+package pl.prokodzik.altmetrik.payments.storage.btree;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toList;
+
+class BTreeRepositoryTest {
+
+    private static final Supplier<String> idSupplier = () -> UUID.randomUUID().toString();
+    private static final BinaryMapper binaryMapper = new BinaryMapper();
+    private static final int CACHE_PAGES = 8;
+
+    private BTreeRepository bTreeRepository;
+    private File tempFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempFile = File.createTempFile("bTreeRepositoryTest", "btree");
+        tempFile.delete();
+        bTreeRepository = new BTreeRepository(idSupplier, binaryMapper, tempFile, CACHE_PAGES);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        bTreeRepository.close();
+        tempFile.delete();
+    }
+
+    @Test
+    void should_save_and_get_by_id() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+
+        //when:
+        bTreeRepository.save(storablePayment);
+        Optional<StorablePayment> byId = bTreeRepository.getById(storablePayment.getId());
+
+        //then:
+        Assertions.assertTrue(byId.isPresent());
+        Assertions.assertEquals(storablePayment, byId.get());
+    }
+
+    @Test
+    void should_throw_when_save_twice() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+
+        //when:
+        bTreeRepository.save(storablePayment);
+        Executable executable = () -> bTreeRepository.save(storablePayment);
+
+        //then:
+        Assertions.assertThrows(PaymentAlreadyExistsException.class, executable);
+        Assertions.assertEquals(1, bTreeRepository.size());
+    }
+
+    @Test
+    void should_update() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+        bTreeRepository.save(storablePayment);
+        StorablePayment paymentUpdate = new StorablePayment(storablePayment.getId(), 12L, Currency.getInstance(Locale.US), "2", "4");
+
+        //when:
+        bTreeRepository.update(paymentUpdate);
+
+        //then:
+        Assertions.assertEquals(Optional.of(paymentUpdate), bTreeRepository.getById(storablePayment.getId()));
+    }
+
+    @Test
+    void should_throw_when_updating_non_existing_entry() {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+
+        //when:
+        Executable executable = () -> bTreeRepository.update(storablePayment);
+
+        //then:
+        Assertions.assertThrows(PaymentNotFoundException.class, executable);
+    }
+
+    @Test
+    void should_delete() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        StorablePayment storablePayment = new StorablePayment(UUID.randomUUID().toString(), 10L, Currency.getInstance(Locale.CANADA), "1", "1");
+        bTreeRepository.save(storablePayment);
+
+        //when:
+        bTreeRepository.delete(storablePayment.getId());
+
+        //then:
+        Assertions.assertTrue(bTreeRepository.getById(storablePayment.getId()).isEmpty());
+        Assertions.assertThrows(PaymentNotFoundException.class, () -> bTreeRepository.delete(storablePayment.getId()));
+    }
+
+    @Test
+    void should_keep_data_after_reopen_with_small_cache() throws PaymentAlreadyExistsException, IOException, PaymentNotFoundException {
+        //given:
+        for (int i = 0; i < 5000; i++) {
+            bTreeRepository.save(new StorablePayment(String.format("%06d", i), (long) i, Currency.getInstance(Locale.US), "user" + i, "account" + i));
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            bTreeRepository.delete(String.format("%06d", i));
+        }
+
+        //when:
+        bTreeRepository.close();
+        bTreeRepository = new BTreeRepository(idSupplier, binaryMapper, tempFile, CACHE_PAGES);
+
+        //then:
+        Assertions.assertEquals(2500, bTreeRepository.size());
+        Assertions.assertEquals(2500, bTreeRepository.getAll().size());
+        Assertions.assertTrue(bTreeRepository.getById("000002").isEmpty());
+        Assertions.assertEquals(4999L, bTreeRepository.getById("004999").map(StorablePayment::getAmount).orElse(null));
+    }
+
+    @Test
+    void should_return_ordered_page_after_given_id() throws PaymentAlreadyExistsException {
+        //given:
+        for (int i = 999; i >= 0; i--) {
+            bTreeRepository.save(new StorablePayment(String.format("%04d", i), (long) i, Currency.getInstance(Locale.US), "1", "1"));
+        }
+
+        //when:
+        List<StorablePayment> page = bTreeRepository.getPage("0499", 3);
+
+        //then:
+        Assertions.assertEquals(List.of("0500", "0501", "0502"), page.stream().map(StorablePayment::getId).collect(toList()));
+    }
+
+    @Test
+    void should_reject_cache_smaller_than_split_path() throws IOException {
+        //given:
+        File file = File.createTempFile("bTreeRepositoryTest", "btree");
+        file.delete();
+
+        //when:
+        Executable executable = () -> new BTreeRepository(idSupplier, binaryMapper, file, 1);
+
+        //then:
+        Assertions.assertThrows(IllegalArgumentException.class, executable);
+        file.delete();
+    }
+
+    @Test
+    void should_split_nodes_with_smallest_cache() throws IOException, PaymentAlreadyExistsException {
+        //given:
+        bTreeRepository.close();
+        tempFile.delete();
+        bTreeRepository = new BTreeRepository(idSupplier, binaryMapper, tempFile, 3);
+
+        //when:
+        for (int i = 0; i < 6000; i++) {
+            bTreeRepository.save(new StorablePayment(null, (long) i, Currency.getInstance(Locale.US), "1", "1"));
+        }
+        bTreeRepository.close();
+        bTreeRepository = new BTreeRepository(idSupplier, binaryMapper, tempFile, CACHE_PAGES);
+
+        //then:
+        Assertions.assertEquals(6000, bTreeRepository.getAll().size());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BTreeRepository(idSupplier, binaryMapper, tempFile, 3));
+    }
+}
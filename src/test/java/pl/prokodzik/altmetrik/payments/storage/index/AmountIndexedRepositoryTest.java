@@ -0,0 +1,134 @@
+package pl.prokodzik.altmetrik.payments.storage.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.storage.InMemRepository;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toList;
+
+class AmountIndexedRepositoryTest {
+
+    private static final Supplier<String> idSupplier = () -> UUID.randomUUID().toString();
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private InMemRepository inMemRepository;
+    private AmountIndexedRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        inMemRepository = new InMemRepository(idSupplier);
+        repository = new AmountIndexedRepository(inMemRepository);
+    }
+
+    @Test
+    void should_return_top_payments_overall_and_per_currency() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment small = repository.save(payment(10L, USD));
+        StorablePayment large = repository.save(payment(500L, EUR));
+        StorablePayment medium = repository.save(payment(200L, USD));
+        StorablePayment largest = repository.save(payment(900L, USD));
+
+        //when:
+        List<StorablePayment> top = repository.getSortedByAmount(null, Long.MIN_VALUE, Long.MAX_VALUE, true, 2);
+        List<StorablePayment> topUsd = repository.getSortedByAmount(USD, Long.MIN_VALUE, Long.MAX_VALUE, true, 2);
+        List<StorablePayment> range = repository.getSortedByAmount(null, 200L, 500L, false, 10);
+
+        //then:
+        Assertions.assertEquals(List.of(largest, large), top);
+        Assertions.assertEquals(List.of(largest, medium), topUsd);
+        Assertions.assertEquals(List.of(medium, large), range);
+        Assertions.assertEquals(List.of(small), repository.getSortedByAmount(null, Long.MIN_VALUE, 10L, false, 10));
+        Assertions.assertEquals(List.of(), repository.getSortedByAmount(Currency.getInstance("PLN"), Long.MIN_VALUE, Long.MAX_VALUE, true, 10));
+    }
+
+    @Test
+    void should_follow_updates_and_deletes() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        StorablePayment first = repository.save(payment(10L, USD));
+        StorablePayment second = repository.save(payment(20L, USD));
+        StorablePayment third = repository.save(payment(30L, EUR));
+
+        //when:
+        StorablePayment moved = repository.update(new StorablePayment(first.getId(), 100L, EUR, "1", "1"));
+        repository.delete(third.getId());
+        List<StorablePayment> bulk = repository.updateWhere(payment -> payment.getId().equals(second.getId()),
+                payment -> new StorablePayment(payment.getId(), 5L, USD, "1", "1"));
+
+        //then:
+        Assertions.assertEquals(List.of(moved, bulk.get(0)), repository.getSortedByAmount(null, Long.MIN_VALUE, Long.MAX_VALUE, true, 10));
+        Assertions.assertEquals(List.of(moved), repository.getSortedByAmount(EUR, Long.MIN_VALUE, Long.MAX_VALUE, true, 10));
+        Assertions.assertEquals(List.of(bulk.get(0)), repository.getSortedByAmount(USD, Long.MIN_VALUE, Long.MAX_VALUE, true, 10));
+        Assertions.assertEquals(List.of(second.getId()), repository.deleteWhere(payment -> payment.getAmount() < 10));
+        Assertions.assertEquals(1, repository.getMetrics().get("amountIndexed"));
+    }
+
+    @Test
+    void should_index_payments_stored_before_decorating() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment stored = inMemRepository.save(payment(10L, USD));
+
+        //when:
+        AmountIndexedRepository indexed = new AmountIndexedRepository(inMemRepository);
+        StorablePayment saved = indexed.save(payment(20L, USD));
+
+        //then:
+        Assertions.assertEquals(List.of(stored, saved), indexed.getSortedByAmount(USD, Long.MIN_VALUE, Long.MAX_VALUE, false, 10));
+    }
+
+    @Test
+    void should_not_show_updates_half_applied() throws Exception {
+        //given:
+        List<StorablePayment> payments = new ArrayList<>();
+        for (long amount = 0; amount < 100; amount++) {
+            payments.add(repository.save(payment(amount, amount % 2 == 0 ? USD : EUR)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        //when:
+        Future<?> writer = executor.submit(() -> {
+            for (int round = 0; round < 5_000; round++) {
+                StorablePayment payment = payments.get(round % payments.size());
+                repository.update(new StorablePayment(payment.getId(), (long) round, round % 2 == 0 ? EUR : USD, "1", "1"));
+            }
+            return null;
+        });
+        Future<List<Integer>> reader = executor.submit(() -> {
+            List<Integer> sizes = new ArrayList<>();
+            while (!writer.isDone()) {
+                List<String> ids = repository.getSortedByAmount(null, Long.MIN_VALUE, Long.MAX_VALUE, true, 1_000).stream()
+                        .map(StorablePayment::getId).collect(toList());
+                sizes.add(ids.size());
+                sizes.add(new HashSet<>(ids).size());
+            }
+            return sizes;
+        });
+        writer.get(30, TimeUnit.SECONDS);
+        List<Integer> sizes = reader.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        //then:
+        Assertions.assertTrue(sizes.stream().allMatch(size -> size == payments.size()));
+        Assertions.assertEquals(inMemRepository.getSortedByAmount(null, Long.MIN_VALUE, Long.MAX_VALUE, true, 1_000),
+                repository.getSortedByAmount(null, Long.MIN_VALUE, Long.MAX_VALUE, true, 1_000));
+    }
+
+    private StorablePayment payment(Long amount, Currency currency) {
+        return new StorablePayment(null, amount, currency, "1", "1");
+    }
+}
@@ -0,0 +1,225 @@
+package pl.prokodzik.altmetrik.payments.storage.partition;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.exceptions.StorageException;
+import pl.prokodzik.altmetrik.payments.storage.CsvMapper;
+import pl.prokodzik.altmetrik.payments.storage.Durability;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+import pl.prokodzik.altmetrik.payments.storage.index.AmountIndexedRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toList;
+
+class TimePartitionedRepositoryTest {
+
+    private static final Supplier<String> idSupplier = () -> UUID.randomUUID().toString();
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+    private static final long START = 1_000 * HOUR;
+
+    private MutableClock clock;
+    private File directory;
+    private TimePartitionedRepository repository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        clock = new MutableClock(START);
+        directory = Files.createTempDirectory("timePartitionedRepositoryTest").toFile();
+        repository = open(Duration.ofHours(3));
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    void should_read_only_partitions_overlapping_range() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment first = repository.save(payment(START + 10));
+        StorablePayment second = repository.save(payment(START + HOUR + 10));
+        StorablePayment third = repository.save(payment(START + HOUR + 20));
+        repository.save(payment(START + 2 * HOUR + 10));
+
+        //when:
+        List<StorablePayment> range = repository.getCreatedBetween(START + HOUR, START + HOUR + 20);
+        List<StorablePayment> twoPartitions = repository.getCreatedBetween(START + 5, START + HOUR + 30);
+
+        //then:
+        Assertions.assertEquals(List.of(second), range);
+        Assertions.assertEquals(List.of(first, second, third), twoPartitions);
+        Assertions.assertEquals(2, repository.getMetrics().get("lastRangePartitions"));
+        Assertions.assertEquals(3, repository.getMetrics().get("partitions"));
+    }
+
+    @Test
+    void should_drop_expired_partitions_as_a_whole() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment old = repository.save(payment(START));
+        StorablePayment recent = repository.save(payment(START + 2 * HOUR));
+
+        //when:
+        clock.set(START + 4 * HOUR);
+        StorablePayment latest = repository.save(payment(null));
+
+        //then:
+        Assertions.assertEquals(Optional.empty(), repository.getById(old.getId()));
+        Assertions.assertEquals(List.of(recent, latest), sortedByCreation(repository.getAll()));
+        Assertions.assertEquals(1L, repository.getMetrics().get("droppedPartitions"));
+        Assertions.assertFalse(new File(directory, "partition-" + START + ".csv").exists());
+        Assertions.assertEquals(START + 4 * HOUR, latest.getCreatedAt());
+    }
+
+    @Test
+    void should_keep_creation_time_and_partition_on_update() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        StorablePayment saved = repository.save(payment(START + 10));
+        StorablePayment changed = new StorablePayment(saved.getId(), 99L, saved.getCurrency(), "2", "2");
+
+        //when:
+        StorablePayment updated = repository.update(changed);
+
+        //then:
+        Assertions.assertEquals(START + 10, updated.getCreatedAt());
+        Assertions.assertEquals(Optional.of(updated), repository.getById(saved.getId()));
+        Assertions.assertEquals(List.of(updated), repository.getCreatedBetween(START, START + HOUR));
+    }
+
+    @Test
+    void should_reopen_stored_partitions() throws IOException, PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        StorablePayment kept = repository.save(payment(START + 10));
+        StorablePayment deleted = repository.save(payment(START + HOUR));
+        repository.delete(deleted.getId());
+
+        //when:
+        TimePartitionedRepository reopened = open(Duration.ofHours(3));
+
+        //then:
+        Assertions.assertEquals(Optional.of(kept), reopened.getById(kept.getId()));
+        Assertions.assertEquals(Optional.empty(), reopened.getById(deleted.getId()));
+        Assertions.assertThrows(PaymentAlreadyExistsException.class, () -> reopened.save(kept));
+    }
+
+    @Test
+    void should_delete_matching_payments_in_all_partitions() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment first = repository.save(payment(START + 10));
+        StorablePayment second = repository.save(payment(START + 2 * HOUR));
+        StorablePayment other = repository.save(new StorablePayment(null, 10L, Currency.getInstance(Locale.US), "2", "2", START + HOUR));
+
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        //when:
+        List<String> deleted = repository.deleteWhere(payment -> {
+            threads.add(Thread.currentThread().getName());
+            return "1".equals(payment.getUserId());
+        });
+
+        //then:
+        Assertions.assertEquals(Set.of("partition-bulk"), threads);
+        Assertions.assertEquals(Set.of(first.getId(), second.getId()), Set.copyOf(deleted));
+        Assertions.assertEquals(List.of(other), repository.getAll());
+        Assertions.assertEquals(Optional.empty(), repository.getById(first.getId()));
+        Assertions.assertNotNull(repository.save(first));
+    }
+
+    @Test
+    void should_fail_bulk_delete_when_a_partition_cannot_be_rewritten() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment first = repository.save(payment(START + 10));
+        repository.save(payment(START + HOUR));
+        new File(directory, "partition-" + START + ".csv.rewrite").mkdir();
+
+        //when:
+        Executable delete = () -> repository.deleteWhere(payment -> true);
+
+        //then:
+        Assertions.assertThrows(StorageException.class, delete);
+        Assertions.assertEquals(Optional.of(first), repository.getById(first.getId()));
+    }
+
+    @Test
+    void should_remove_dropped_partitions_from_amount_index() throws IOException, PaymentAlreadyExistsException {
+        //given:
+        AmountIndexedRepository indexed = new AmountIndexedRepository(open(Duration.ofHours(1)));
+        indexed.save(new StorablePayment(null, 1000L, Currency.getInstance(Locale.US), "1", "1", START));
+        StorablePayment recent = indexed.save(new StorablePayment(null, 5L, Currency.getInstance(Locale.US), "1", "1", START + 2 * HOUR));
+
+        //when:
+        clock.set(START + 2 * HOUR + 10);
+        List<StorablePayment> sorted = indexed.getSortedByAmount(null, Long.MIN_VALUE, Long.MAX_VALUE, true, 10);
+
+        //then:
+        Assertions.assertEquals(List.of(recent), sorted);
+        Assertions.assertEquals(List.of(recent), indexed.getSortedByAmount(Currency.getInstance(Locale.US), Long.MIN_VALUE, Long.MAX_VALUE, true, 10));
+        Assertions.assertEquals(1, indexed.getMetrics().get("amountIndexed"));
+    }
+
+    private TimePartitionedRepository open(Duration retention) throws IOException {
+        return new TimePartitionedRepository(idSupplier, new CsvPartitionStore(directory, new CsvMapper(), Durability.osBuffered()), clock,
+                Duration.ofHours(1), retention);
+    }
+
+    private List<StorablePayment> sortedByCreation(List<StorablePayment> payments) {
+        return payments.stream().sorted((a, b) -> Long.compare(a.getCreatedAt(), b.getCreatedAt())).collect(toList());
+    }
+
+    private StorablePayment payment(Long createdAt) {
+        return new StorablePayment(null, 10L, Currency.getInstance(Locale.US), "1", "1", createdAt);
+    }
+
+    private static final class MutableClock extends Clock {
+        private long millis;
+
+        private MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+        private void set(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
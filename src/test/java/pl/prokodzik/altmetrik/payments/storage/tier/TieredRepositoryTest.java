@@ -0,0 +1,167 @@
+package pl.prokodzik.altmetrik.payments.storage.tier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentAlreadyExistsException;
+import pl.prokodzik.altmetrik.payments.exceptions.PaymentNotFoundException;
+import pl.prokodzik.altmetrik.payments.storage.BinaryMapper;
+import pl.prokodzik.altmetrik.payments.storage.StorablePayment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+class TieredRepositoryTest {
+
+    private static final Supplier<String> idSupplier = () -> UUID.randomUUID().toString();
+    private static final int HOT_CAPACITY = 10;
+    private static final int BLOCK_RECORDS = 4;
+    private static final long SEGMENT_BYTES = 512;
+
+    private TieredRepository tieredRepository;
+    private File spillDirectory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        spillDirectory = Files.createTempDirectory("tieredRepositoryTest").toFile();
+        tieredRepository = new TieredRepository(idSupplier, new BinaryMapper(), spillDirectory, HOT_CAPACITY, BLOCK_RECORDS, SEGMENT_BYTES);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        tieredRepository.close();
+        spillDirectory.delete();
+    }
+
+    @Test
+    void should_demote_least_recently_used_payments() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment first = tieredRepository.save(payment("first", 1L));
+        for (int i = 0; i < 100; i++) {
+            tieredRepository.save(payment(null, (long) i));
+        }
+
+        //when:
+        Optional<StorablePayment> byId = tieredRepository.getById(first.getId());
+        Map<String, Object> metrics = tieredRepository.getMetrics();
+
+        //then:
+        Assertions.assertEquals(first, byId.get());
+        Assertions.assertEquals(HOT_CAPACITY, metrics.get("hotSize"));
+        Assertions.assertEquals(101 - HOT_CAPACITY, metrics.get("coldSize"));
+        Assertions.assertEquals(92L, metrics.get("demotions"));
+        Assertions.assertEquals(1L, metrics.get("promotions"));
+        Assertions.assertEquals(1L, metrics.get("coldHits"));
+        Assertions.assertTrue((int) metrics.get("coldSegments") > 1);
+        Assertions.assertEquals(101, tieredRepository.getAll().size());
+    }
+
+    @Test
+    void should_keep_recently_read_payment_hot() throws PaymentAlreadyExistsException {
+        //given:
+        StorablePayment first = tieredRepository.save(payment("first", 1L));
+
+        //when:
+        for (int i = 0; i < 100; i++) {
+            tieredRepository.save(payment(null, (long) i));
+            tieredRepository.getById(first.getId());
+        }
+
+        //then:
+        Assertions.assertEquals(0L, tieredRepository.getMetrics().get("promotions"));
+        Assertions.assertEquals(100L, tieredRepository.getMetrics().get("hotHits"));
+    }
+
+    @Test
+    void should_update_and_delete_cold_payments() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        StorablePayment updated = tieredRepository.save(payment("updated", 1L));
+        StorablePayment deleted = tieredRepository.save(payment("deleted", 2L));
+        for (int i = 0; i < 100; i++) {
+            tieredRepository.save(payment(null, (long) i));
+        }
+
+        //when:
+        StorablePayment newVersion = payment(updated.getId(), 50L);
+        tieredRepository.update(newVersion);
+        tieredRepository.delete(deleted.getId());
+
+        //then:
+        Assertions.assertEquals(newVersion, tieredRepository.getById(updated.getId()).get());
+        Assertions.assertEquals(Optional.empty(), tieredRepository.getById(deleted.getId()));
+        Assertions.assertEquals(101, tieredRepository.size());
+        Assertions.assertThrows(PaymentNotFoundException.class, () -> tieredRepository.delete(deleted.getId()));
+        Assertions.assertThrows(PaymentAlreadyExistsException.class, () -> tieredRepository.save(payment(updated.getId(), 1L)));
+    }
+
+    @Test
+    void should_remove_segments_without_live_payments() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        for (int i = 0; i < 200; i++) {
+            tieredRepository.save(payment("id" + i, (long) i));
+        }
+        int segments = (int) tieredRepository.getMetrics().get("coldSegments");
+
+        //when:
+        for (int i = 0; i < 200; i++) {
+            tieredRepository.delete("id" + i);
+        }
+
+        //then:
+        Assertions.assertTrue(segments > 2);
+        Assertions.assertEquals(1, tieredRepository.getMetrics().get("coldSegments"));
+        Assertions.assertEquals(0, tieredRepository.size());
+    }
+
+    @Test
+    void should_compact_segments_with_few_live_payments() throws PaymentAlreadyExistsException, PaymentNotFoundException {
+        //given:
+        for (int i = 0; i < 200; i++) {
+            tieredRepository.save(payment("id" + i, (long) i));
+        }
+        long bytesBefore = (long) tieredRepository.getMetrics().get("coldBytes");
+
+        //when:
+        for (int i = 0; i < 200; i++) {
+            if (i % 4 != 0) {
+                tieredRepository.delete("id" + i);
+            }
+        }
+
+        //then:
+        Assertions.assertTrue((long) tieredRepository.getMetrics().get("coldCompactions") > 0);
+        Assertions.assertTrue((long) tieredRepository.getMetrics().get("coldBytes") < bytesBefore / 2);
+        Assertions.assertEquals(50, tieredRepository.size());
+        for (int i = 0; i < 200; i += 4) {
+            Assertions.assertEquals(Optional.of((long) i), tieredRepository.getById("id" + i).map(StorablePayment::getAmount));
+        }
+    }
+
+    @Test
+    void should_clear_spill_directory_on_startup() throws PaymentAlreadyExistsException, IOException {
+        //given:
+        for (int i = 0; i < 100; i++) {
+            tieredRepository.save(payment(null, (long) i));
+        }
+
+        //when:
+        TieredRepository restarted = new TieredRepository(idSupplier, new BinaryMapper(), spillDirectory, HOT_CAPACITY, BLOCK_RECORDS, SEGMENT_BYTES);
+
+        //then:
+        Assertions.assertEquals(0, restarted.size());
+        Assertions.assertEquals(1, spillDirectory.listFiles().length);
+        restarted.close();
+    }
+
+    private StorablePayment payment(final String id, final Long amount) {
+        return new StorablePayment(id, amount, Currency.getInstance(Locale.CANADA), "1", "1");
+    }
+}
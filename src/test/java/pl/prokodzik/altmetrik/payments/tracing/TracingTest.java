@@ -0,0 +1,79 @@
+package pl.prokodzik.altmetrik.payments.tracing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+class TracingTest {
+
+    @AfterEach
+    void tearDown() {
+        Tracing.end();
+        Tracing.clear();
+    }
+
+    @Test
+    void should_record_nested_spans() {
+        //given:
+        Trace trace = Tracing.begin("request-1");
+
+        //when:
+        try (Trace service = Tracing.span("service.getById")) {
+            try (Trace repository = Tracing.span("repository.getById")) {
+                Assertions.assertSame(trace, repository);
+            }
+        }
+        Tracing.end();
+
+        //then:
+        Assertions.assertEquals(2, trace.getSpanCount());
+        Assertions.assertEquals("service.getById", trace.getSpanName(0));
+        Assertions.assertEquals("repository.getById", trace.getSpanName(1));
+        Assertions.assertTrue(trace.getSpanMicros(0) >= trace.getSpanMicros(1));
+        Assertions.assertTrue(trace.toString().startsWith("trace=request-1 total="));
+        Assertions.assertTrue(trace.toString().contains(" service.getById="));
+        Assertions.assertTrue(trace.toString().contains(" >repository.getById="));
+    }
+
+    @Test
+    void should_ignore_spans_outside_of_request() {
+        //given:
+        Tracing.end();
+
+        //when:
+        Trace span = Tracing.span("repository.getAll");
+        span.close();
+
+        //then:
+        Assertions.assertNotSame(Tracing.begin("request-2"), span);
+        Assertions.assertEquals(0, Tracing.end().getSpanCount());
+    }
+
+    @Test
+    void should_replace_unsafe_trace_id() {
+        //when:
+        Trace trace = Tracing.begin("bad id\nINFO forged line");
+
+        //then:
+        Assertions.assertNotEquals("bad id\nINFO forged line", trace.getTraceId());
+        Assertions.assertTrue(trace.getTraceId().matches("[0-9a-f]{16}"));
+        Assertions.assertEquals(trace.getTraceId(), MDC.get(Tracing.TRACE_ID));
+    }
+
+    @Test
+    void should_count_dropped_spans() {
+        //given:
+        Trace trace = Tracing.begin("request-3");
+
+        //when:
+        for (int i = 0; i < Trace.MAX_SPANS + 3; i++) {
+            Tracing.span("span").close();
+        }
+        Tracing.end();
+
+        //then:
+        Assertions.assertEquals(Trace.MAX_SPANS, trace.getSpanCount());
+        Assertions.assertTrue(trace.toString().endsWith(" dropped=3"));
+    }
+}